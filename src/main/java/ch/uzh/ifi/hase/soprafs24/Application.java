@@ -2,19 +2,34 @@ package ch.uzh.ifi.hase.soprafs24;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @RestController
 @SpringBootApplication
+@EnableScheduling
 public class Application {
 
   public static void main(String[] args) {
-    SpringApplication.run(Application.class, args);
+    SpringApplication application = new SpringApplication(Application.class);
+    // one shutdown hook for both, so the async log queue (logback-spring.xml) is only
+    // written out after the context has closed and logged its last events
+    application.setRegisterShutdownHook(false);
+    ConfigurableApplicationContext context = application.run(args);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      context.close();
+      Runnable loggingShutdown = LoggingSystem.get(Application.class.getClassLoader()).getShutdownHandler();
+      if (loggingShutdown != null) {
+        loggingShutdown.run();
+      }
+    }, "shutdown"));
   }
 
   @GetMapping(value = "/", produces = MediaType.TEXT_PLAIN_VALUE)
@@ -0,0 +1,267 @@
+package ch.uzh.ifi.hase.soprafs24.archive;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UsersArchivedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * User Archive
+ * Cold storage for users that have been OFFLINE for a long time, so that the
+ * USER table (and findAll(), its indexes and the caches built from it) only
+ * holds the users that are actually around.
+ * Every archive.interval-ms, users that logged out (or, without a logout,
+ * registered) more than archive.offline-days ago are moved into the
+ * USER_ARCHIVE table, archive.batch-size users per transaction. The rows are
+ * moved with INSERT ... SELECT and DELETE, nothing is loaded into JPA.
+ * The UserService falls back to the archive for reads by id, for the
+ * uniqueness checks of the registration and for logins; a successful login
+ * moves the user back into the USER table (rehydrate()).
+ * Like the snapshots, the archive only works on a single database, it is not
+ * used when the users are sharded.
+ */
+@Component
+public class UserArchive {
+
+    private static final String COLUMNS = "id, name, username, token, token_expires_at, status, password_hash, "
+            + "change_seq, creation_date, birth_date";
+
+    private static final RowMapper<User> USER_ROW_MAPPER = (resultSet, rowNum) -> {
+        User user = new User();
+        user.setId(resultSet.getLong("id"));
+        user.setName(resultSet.getString("name"));
+        user.setUsername(resultSet.getString("username"));
+        user.setToken(resultSet.getString("token"));
+        user.setTokenExpiresAt(resultSet.getTimestamp("token_expires_at"));
+        int status = resultSet.getInt("status");
+        user.setStatus(resultSet.wasNull() ? null : UserStatus.values()[status]);
+        user.setPasswordHash(resultSet.getString("password_hash"));
+        long changeSeq = resultSet.getLong("change_seq");
+        user.setChangeSeq(resultSet.wasNull() ? null : changeSeq);
+        user.setCreationDate(resultSet.getTimestamp("creation_date"));
+        user.setBirthDate(resultSet.getDate("birth_date"));
+        user.setArchived(true);
+        return user;
+    };
+
+    private final Logger log = LoggerFactory.getLogger(UserArchive.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final long offlineMillis;
+    private final int batchSize;
+    private final boolean sharded;
+
+    public UserArchive(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                       ApplicationEventPublisher eventPublisher,
+                       @Value("${archive.enabled:true}") boolean enabled,
+                       @Value("${archive.offline-days:180}") long offlineDays,
+                       @Value("${archive.batch-size:500}") int batchSize,
+                       @Value("${sharding.enabled:false}") boolean sharded) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.offlineMillis = TimeUnit.DAYS.toMillis(offlineDays);
+        this.batchSize = batchSize;
+        this.sharded = sharded;
+    }
+
+    @PostConstruct
+    public void createTable() {
+        if (sharded) {
+            return;
+        }
+        // same columns as USER (status as ordinal), the name index serves the registration check
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user_archive ("
+                + "id BIGINT PRIMARY KEY, "
+                + "name VARCHAR(255) NOT NULL, "
+                + "username VARCHAR(255) NOT NULL UNIQUE, "
+                + "token VARCHAR(255), "
+                + "token_expires_at TIMESTAMP, "
+                + "status INTEGER, "
+                + "password_hash VARCHAR(255), "
+                + "change_seq BIGINT, "
+                + "creation_date TIMESTAMP NOT NULL, "
+                + "birth_date DATE, "
+                + "archived_at TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_archive_name ON user_archive (name)");
+    }
+
+    @Scheduled(initialDelayString = "${archive.interval-ms:3600000}", fixedDelayString = "${archive.interval-ms:3600000}")
+    public void archiveInactiveUsers() {
+        if (enabled && !sharded) {
+            archiveOfflineSince(new Date(System.currentTimeMillis() - offlineMillis));
+        }
+    }
+
+    /**
+     * Moves all OFFLINE users whose last logout (or, if unknown, registration)
+     * is before the given time into the archive.
+     *
+     * @return the number of archived users
+     */
+    public long archiveOfflineSince(Date cutoff) {
+        checkNotSharded();
+        long start = System.nanoTime();
+        long archived = 0;
+        while (true) {
+            List<Long> moved;
+            try {
+                moved = transactionTemplate.execute(status -> archiveBatch(new Timestamp(cutoff.getTime())));
+            }
+            catch (DataIntegrityViolationException e) {
+                // e.g. another instance archived some of the same users at the same time, the next run continues
+                log.warn("Archiving users failed after {} users", archived, e);
+                break;
+            }
+            archived += moved.size();
+            if (!moved.isEmpty()) {
+                // committed, only what lists the moved users has to be updated
+                eventPublisher.publishEvent(new UsersArchivedEvent(moved));
+            }
+            if (moved.size() < batchSize) {
+                break;
+            }
+        }
+
+        if (archived > 0) {
+            log.info("Archived {} users offline since {} in {} ms", archived, cutoff,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        return archived;
+    }
+
+    private List<Long> archiveBatch(Timestamp cutoff) {
+        // locked, a login in the meantime must not change a row between its copy and its deletion
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM user WHERE status = ? "
+                        + "AND COALESCE(token_expires_at, creation_date) < ? ORDER BY id LIMIT ? FOR UPDATE",
+                Long.class, UserStatus.OFFLINE.ordinal(), cutoff, batchSize);
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        String in = inClause(ids);
+        List<Object> args = new ArrayList<>();
+        args.add(new Timestamp(System.currentTimeMillis()));
+        args.addAll(ids);
+        jdbcTemplate.update("INSERT INTO user_archive (" + COLUMNS + ", archived_at) SELECT " + COLUMNS
+                + ", ? FROM user WHERE id IN " + in, args.toArray());
+        jdbcTemplate.update("DELETE FROM user WHERE id IN " + in, ids.toArray());
+        return ids;
+    }
+
+    /**
+     * Moves the archived user with the given id back into the USER table,
+     * within the transaction of the caller.
+     *
+     * @return false if the user is not (or no longer) archived, e.g. because
+     * a concurrent login has rehydrated it already
+     */
+    public boolean rehydrate(Long id) {
+        checkNotSharded();
+        // concurrent logins of the same user wait here for the first one
+        List<Long> locked = jdbcTemplate.queryForList("SELECT id FROM user_archive WHERE id = ? FOR UPDATE",
+                Long.class, id);
+        if (locked.isEmpty()) {
+            return false;
+        }
+        jdbcTemplate.update("INSERT INTO user (" + COLUMNS + ") SELECT " + COLUMNS
+                + " FROM user_archive WHERE id = ?", id);
+        jdbcTemplate.update("DELETE FROM user_archive WHERE id = ?", id);
+        log.debug("event=user.rehydrated id={}", id);
+        return true;
+    }
+
+    /**
+     * @return the archived user with the given id, null if there is none
+     */
+    public User findById(Long id) {
+        return sharded ? null : single(jdbcTemplate.query("SELECT " + COLUMNS + " FROM user_archive WHERE id = ?",
+                USER_ROW_MAPPER, id));
+    }
+
+    public List<User> findAllById(Collection<Long> ids) {
+        if (sharded || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM user_archive WHERE id IN " + inClause(ids),
+                USER_ROW_MAPPER, ids.toArray());
+    }
+
+    /**
+     * @return the archived user with the given username, null if there is none
+     */
+    public User findByUsername(String username) {
+        return sharded ? null : single(jdbcTemplate.query("SELECT " + COLUMNS
+                + " FROM user_archive WHERE username = ?", USER_ROW_MAPPER, username));
+    }
+
+    /**
+     * @return the archived users with the given username or the given name, in one query
+     */
+    public List<User> findByUsernameOrName(String username, String name) {
+        if (sharded) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM user_archive WHERE username = ? OR name = ?",
+                USER_ROW_MAPPER, username, name);
+    }
+
+    // statistics: [status, count] rows, like UserRepository.countByStatus()
+    public List<Object[]> countByStatus() {
+        if (sharded) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query("SELECT status, COUNT(*) FROM user_archive GROUP BY status",
+                (resultSet, rowNum) -> {
+                    int status = resultSet.getInt(1);
+                    return new Object[]{resultSet.wasNull() ? null : UserStatus.values()[status], resultSet.getLong(2)};
+                });
+    }
+
+    // statistics: [day of creation_date, count] rows, like UserRepository.countRegistrationsPerDay()
+    public List<Object[]> countRegistrationsPerDay() {
+        if (sharded) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query("SELECT CAST(creation_date AS DATE), COUNT(*) FROM user_archive "
+                        + "GROUP BY CAST(creation_date AS DATE)",
+                (resultSet, rowNum) -> new Object[]{resultSet.getDate(1), resultSet.getLong(2)});
+    }
+
+    private static User single(List<User> users) {
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    private static String inClause(Collection<Long> ids) {
+        return ids.stream().map(id -> "?").collect(Collectors.joining(", ", "(", ")"));
+    }
+
+    private void checkNotSharded() {
+        if (sharded) {
+            throw new IllegalStateException("The archive is not supported when the users are sharded");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Audit Event
+ * One entry of the audit trail. In the log files, an event is stored as
+ * [type: byte][timestamp: long][user id: long][username length: short][username: UTF-8]
+ */
+public class AuditEvent {
+
+    public enum Type {
+        REGISTERED, LOGIN, LOGOUT, PROFILE_UPDATED
+    }
+
+    private static final int FIXED_SIZE = Byte.BYTES + Long.BYTES + Long.BYTES + Short.BYTES;
+
+    private final Type type;
+    private final long timestamp;
+    private final long userId;
+    private final String username;
+
+    public AuditEvent(Type type, long timestamp, long userId, String username) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.userId = userId;
+        this.username = username == null ? "" : username;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    byte[] usernameBytes() {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= Short.MAX_VALUE ? bytes : new byte[0];
+    }
+
+    static int encodedSize(byte[] usernameBytes) {
+        return FIXED_SIZE + usernameBytes.length;
+    }
+
+    void writeTo(ByteBuffer buffer, byte[] usernameBytes) {
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(timestamp);
+        buffer.putLong(userId);
+        buffer.putShort((short) usernameBytes.length);
+        buffer.put(usernameBytes);
+    }
+
+    static AuditEvent readFrom(ByteBuffer buffer) {
+        Type type = Type.values()[buffer.get()];
+        long timestamp = buffer.getLong();
+        long userId = buffer.getLong();
+        byte[] usernameBytes = new byte[buffer.getShort()];
+        buffer.get(usernameBytes);
+        return new AuditEvent(type, timestamp, userId, new String(usernameBytes, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return type + " of user " + userId + " (" + username + ") at " + timestamp;
+    }
+}
@@ -0,0 +1,222 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Audit Log
+ * Keeps an audit trail of registrations, logins, logouts and profile updates
+ * without adding any I/O to the UserService transactions:
+ * - the committed UserChangedEvents are turned into AuditEvents and put into a
+ * lock-free ring buffer (if the buffer is full, the event is dropped and counted)
+ * - a single writer thread drains the buffer in batches and appends them to
+ * the memory-mapped, segmented AuditSegmentLog; while the buffer is empty it
+ * is parked and the next publish() wakes it up
+ * replay() reads the trail back.
+ * On shutdown, the buffered events are written out once the web server has
+ * drained the running requests (graceful shutdown), so the events of those
+ * requests are not lost.
+ */
+@Component
+public class AuditLog implements MeterBinder, SmartLifecycle {
+
+    // lifecycles stop from the highest phase down, the web server's graceful shutdown runs at
+    // SmartLifecycle.DEFAULT_PHASE; all of them stop before any bean (e.g. the DataSource) is destroyed
+    static final int SHUTDOWN_PHASE = 0;
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final AuditRingBuffer<AuditEvent> ringBuffer;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    private AuditSegmentLog segmentLog;
+    private Thread writer;
+    private volatile boolean running;
+    // set by the writer before it parks, publish() only unparks it then
+    private final AtomicBoolean writerIdle = new AtomicBoolean();
+    private boolean closed;
+
+    public AuditLog(@Value("${audit.directory:${java.io.tmpdir}/soprafs24/audit}") String directory,
+                    @Value("${audit.segment-size:16MB}") DataSize segmentSize,
+                    @Value("${audit.max-segments:16}") int maxSegments,
+                    @Value("${audit.buffer-capacity:8192}") int bufferCapacity) {
+        this.directory = Paths.get(directory);
+        this.segmentSize = (int) segmentSize.toBytes();
+        this.maxSegments = maxSegments;
+        this.ringBuffer = new AuditRingBuffer<>(bufferCapacity);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        segmentLog = new AuditSegmentLog(directory, segmentSize, maxSegments);
+        running = true;
+        writer = new Thread(this::writeLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Writing audit log to {}", directory);
+    }
+
+    /**
+     * Writes out the events still in the buffer and closes the log. Events
+     * published afterwards are dropped.
+     */
+    @PreDestroy
+    public synchronized void close() throws InterruptedException, IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        segmentLog.close();
+        log.info("Closed audit log, {} events written, {} dropped", written.sum(), dropped.sum());
+    }
+
+    @Override
+    public void start() {
+        // already opened on construction, events published during startup must not be lost
+    }
+
+    @Override
+    public void stop() {
+        try {
+            close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            log.error("Could not close audit log", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return !closed;
+    }
+
+    @Override
+    public int getPhase() {
+        return SHUTDOWN_PHASE;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        User user = event.getUser();
+        AuditEvent.Type type;
+        switch (event.getType()) {
+            case CREATED:
+                type = AuditEvent.Type.REGISTERED;
+                break;
+            case STATUS_CHANGED:
+                type = user.getStatus() == UserStatus.ONLINE ? AuditEvent.Type.LOGIN : AuditEvent.Type.LOGOUT;
+                break;
+            default:
+                type = AuditEvent.Type.PROFILE_UPDATED;
+        }
+        publish(new AuditEvent(type, System.currentTimeMillis(), user.getId(), user.getUsername()));
+    }
+
+    /**
+     * Hands the event over to the writer thread, never blocks.
+     *
+     * @return false if the buffer was full (or the log closed) and the event has been dropped
+     */
+    public boolean publish(AuditEvent event) {
+        if (!running || !ringBuffer.offer(event)) {
+            dropped.increment();
+            return false;
+        }
+        // only the first publisher after the writer went idle pays for the unpark
+        if (writerIdle.get() && writerIdle.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Passes all written events to the consumer, oldest first. Events that are
+     * still in the ring buffer are not included.
+     */
+    public void replay(Consumer<AuditEvent> consumer) throws IOException {
+        segmentLog.replay(consumer);
+    }
+
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            // read the flag before draining, so everything published before stop() is written
+            boolean stopping = !running;
+            ringBuffer.drain(batch::add, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                if (stopping) {
+                    return;
+                }
+                // announce the park first and check again: an event offered in between either
+                // shows up here or its publisher sees the flag and unparks us
+                writerIdle.set(true);
+                if (ringBuffer.size() == 0 && running) {
+                    LockSupport.park(this);
+                }
+                writerIdle.set(false);
+                continue;
+            }
+
+            for (AuditEvent event : batch) {
+                try {
+                    segmentLog.append(event);
+                    written.increment();
+                }
+                catch (IOException | RuntimeException e) {
+                    dropped.increment();
+                    log.error("Could not write audit event {}", event, e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("audit.events.written", written, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("audit.events.dropped", dropped, LongAdder::sum)
+                .description("Audit events lost because the ring buffer was full or writing failed")
+                .register(registry);
+        Gauge.builder("audit.buffer.size", ringBuffer, AuditRingBuffer::size)
+                .register(registry);
+    }
+}
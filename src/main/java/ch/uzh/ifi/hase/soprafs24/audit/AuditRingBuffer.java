@@ -0,0 +1,103 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Audit Ring Buffer
+ * Bounded, lock-free queue for many producers and a single consumer. Every
+ * slot carries a sequence number that tells producers and the consumer whose
+ * turn it is, so neither side ever blocks: offer() returns false if the buffer
+ * is full and drain() returns 0 if it is empty.
+ * (Based on Dmitry Vyukov's bounded MPMC queue, reduced to a single consumer.)
+ *
+ * @param <T> type of the elements
+ */
+public class AuditRingBuffer<T> {
+
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    // only written by the consumer thread, volatile so size() can be read by others
+    private volatile long head;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element, can be called from any thread.
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    // publishes the element to the consumer
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0) {
+                // the consumer has not yet freed this slot
+                return false;
+            }
+            else {
+                // another producer took this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes up to maxElements elements, must only be called from the consumer thread.
+     *
+     * @return the number of elements passed to the consumer
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<T> consumer, int maxElements) {
+        int drained = 0;
+        long position = head;
+        while (drained < maxElements) {
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            T element = (T) elements[index];
+            elements[index] = null;
+            // frees the slot for the producer one lap ahead
+            sequences.lazySet(index, position + elements.length);
+            position++;
+            consumer.accept(element);
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
@@ -0,0 +1,156 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Audit Segment Log
+ * Append-only log of audit events, split into segments of a fixed size. The
+ * current segment is memory-mapped, so appending an event is a copy into the
+ * page cache instead of a write system call. Once a segment is full, it is
+ * forced to disk and the next segment is started; only the newest maxSegments
+ * segments are kept, also across restarts (every start begins a new segment).
+ * Every record is stored as [payload length: int][payload], the zero-filled
+ * rest of a segment marks its end. The length is written after the payload,
+ * so a record is only visible once it is complete.
+ */
+public class AuditSegmentLog implements Closeable {
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    public AuditSegmentLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+
+        Files.createDirectories(directory);
+        // never append to segments of a previous run, start a new one instead
+        List<Path> segments = listSegments();
+        long lastIndex = segments.isEmpty() ? -1 : indexOf(segments.get(segments.size() - 1));
+        openSegment(lastIndex + 1);
+        deleteOldSegments();
+    }
+
+    public synchronized void append(AuditEvent event) throws IOException {
+        byte[] usernameBytes = event.usernameBytes();
+        int payloadSize = AuditEvent.encodedSize(usernameBytes);
+        // keep room for the length of the record
+        int recordSize = Integer.BYTES + payloadSize;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Audit event does not fit into a segment");
+        }
+        if (segment.remaining() < recordSize) {
+            rotate();
+        }
+
+        int start = segment.position();
+        segment.position(start + Integer.BYTES);
+        event.writeTo(segment, usernameBytes);
+        segment.putInt(start, payloadSize);
+    }
+
+    /**
+     * Passes all events that have been appended so far to the consumer, oldest first.
+     */
+    public synchronized void replay(Consumer<AuditEvent> consumer) throws IOException {
+        for (Path path : listSegments()) {
+            if (indexOf(path) == segmentIndex) {
+                readSegment(segment.duplicate(), consumer);
+            }
+            else {
+                try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    readSegment(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()), consumer);
+                }
+            }
+        }
+    }
+
+    public synchronized long getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segment.force();
+        channel.close();
+    }
+
+    private void readSegment(ByteBuffer buffer, Consumer<AuditEvent> consumer) {
+        buffer.position(0);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int payloadSize = buffer.getInt();
+            if (payloadSize <= 0 || payloadSize > buffer.remaining()) {
+                return;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(payloadSize);
+            consumer.accept(AuditEvent.readFrom(payload));
+            buffer.position(buffer.position() + payloadSize);
+        }
+    }
+
+    private void rotate() throws IOException {
+        close();
+        openSegment(segmentIndex + 1);
+        deleteOldSegments();
+    }
+
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        while (true) {
+            try {
+                channel = FileChannel.open(directory.resolve(String.format("%s%019d%s", PREFIX, index, SUFFIX)),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                break;
+            }
+            catch (FileAlreadyExistsException e) {
+                // another process writes into the same directory
+                index++;
+            }
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segmentIndex = index;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,191 @@
+package ch.uzh.ifi.hase.soprafs24.cache;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.RemoteUserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UsersArchivedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UsersReloadedEvent;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * User JSON Cache
+ * Keeps the serialized JSON (UTF-8 bytes) of user profiles and of the user
+ * list, so that reads skip the database, the DTOMapper and Jackson entirely.
+ * - profiles are kept in a bounded LRU map keyed by the user id
+ * - the list is a single snapshot that is rebuilt on the first read after a write
+ * Every UserChangedEvent invalidates the affected profile and the list once the
+ * transaction has committed, and so do the changes of other instances
+ * (RemoteUserChangedEvent) and archived users (UsersArchivedEvent), whose
+ * profiles are unchanged but who drop out of the list.
+ * Invalidations bump a generation counter; a value that was loaded while an
+ * invalidation happened is returned to its caller but not cached, since it
+ * may already be outdated. Loaders that share loads between callers (see
+ * UserReadCoalescer) get the generation of the miss and must only share a load
+ * with callers of the same generation, otherwise a load that started before a
+ * write could be cached for a caller that missed after it.
+ */
+@Component
+public class UserJsonCache {
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+
+    // guarded by this
+    private final LinkedHashMap<Long, byte[]> profiles;
+    private byte[] listSnapshot;
+    private long generation;
+
+    public UserJsonCache(ObjectMapper objectMapper, @Value("${cache.user-json.max-entries:10000}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.profiles = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > UserJsonCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param id     id of the user
+     * @param loader loads the user on a cache miss, may throw if the user does not exist
+     * @return the JSON representation of the UserGetDTO of the user
+     */
+    public byte[] getProfile(Long id, Supplier<User> loader) {
+        return getProfile(id, generation -> loader.get());
+    }
+
+    /**
+     * @param id     id of the user
+     * @param loader loads the user on a cache miss, gets the cache generation of the miss
+     * @return the JSON representation of the UserGetDTO of the user
+     */
+    public byte[] getProfile(Long id, LongFunction<User> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            byte[] cached = profiles.get(id);
+            if (cached != null) {
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+
+        byte[] json = serialize(DTOMapper.INSTANCE.convertEntityToUserGetDTO(loader.apply(loadGeneration)));
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                profiles.put(id, json);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * @param loader loads all users if there is no current snapshot
+     * @return the JSON array of the UserGetDTOs of all users
+     */
+    public byte[] getList(Supplier<List<User>> loader) {
+        return getList(generation -> loader.get());
+    }
+
+    /**
+     * @param loader loads all users if there is no current snapshot, gets the cache generation of the miss
+     * @return the JSON array of the UserGetDTOs of all users
+     */
+    public byte[] getList(LongFunction<List<User>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            if (listSnapshot != null) {
+                return listSnapshot;
+            }
+            loadGeneration = generation;
+        }
+
+        List<UserGetDTO> userGetDTOs = new ArrayList<>();
+        for (User user : loader.apply(loadGeneration)) {
+            userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+        }
+        byte[] json = serialize(userGetDTOs);
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                listSnapshot = json;
+            }
+        }
+        return json;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(event.getUserId());
+    }
+
+    @EventListener
+    public void onUsersReloaded(UsersReloadedEvent event) {
+        invalidateAll();
+    }
+
+    @EventListener
+    public void onUsersArchived(UsersArchivedEvent event) {
+        invalidate(event.getUserIds());
+    }
+
+    @EventListener
+    public void onRemoteUserChanged(RemoteUserChangedEvent event) {
+        if (event.isReload()) {
+            invalidateAll();
+        }
+        else {
+            invalidate(event.getUserId());
+        }
+    }
+
+    public synchronized void invalidate(Long id) {
+        generation++;
+        profiles.remove(id);
+        listSnapshot = null;
+    }
+
+    public synchronized void invalidate(Collection<Long> ids) {
+        generation++;
+        for (Long id : ids) {
+            profiles.remove(id);
+        }
+        listSnapshot = null;
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        profiles.clear();
+        listSnapshot = null;
+    }
+
+    public synchronized int size() {
+        return profiles.size();
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        }
+        catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import ch.uzh.ifi.hase.soprafs24.event.RemoteUserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UsersArchivedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UsersReloadedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Cluster Change Channel
+ * Keeps the local state of several instances sharing one database coherent.
+ * Every user write is recorded in the CLUSTER_CHANGE table within the same
+ * transaction, and every instance polls that table for the changes of the
+ * other instances, which it republishes locally as RemoteUserChangedEvents
+ * (e.g., the UserJsonCache then drops the affected entries).
+ * Change ids can become visible out of order (concurrent transactions) or not
+ * at all (rollbacks). Gaps are therefore re-polled for cluster.gap-timeout-ms
+ * before they are skipped.
+ * Enabled with cluster.enabled=true, which requires a database shared by all
+ * instances (see application-cluster.properties).
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterChangeChannel {
+
+    private static final int POLL_LIMIT = 1000;
+    private static final String RELOADED = "RELOADED";
+    private static final String ARCHIVED = "ARCHIVED";
+
+    private final Logger log = LoggerFactory.getLogger(ClusterChangeChannel.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long gapTimeoutMillis;
+    private final long retentionMillis;
+
+    // only accessed by the polling thread
+    private long cursor;
+    private final TreeSet<Long> processedAboveCursor = new TreeSet<>();
+    private long gapSince;
+
+    public ClusterChangeChannel(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                                @Value("${cluster.gap-timeout-ms:5000}") long gapTimeoutMillis,
+                                @Value("${cluster.retention-ms:600000}") long retentionMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS cluster_change ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "node_id VARCHAR(36) NOT NULL, "
+                + "user_id BIGINT, "
+                + "change_type VARCHAR(32) NOT NULL, "
+                + "created_at TIMESTAMP NOT NULL)");
+        // changes from before the start are already reflected in the database
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM cluster_change", Long.class);
+        cursor = maxId == null ? 0 : maxId;
+        log.info("Joined cluster as node {}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        record(event.getUserId(), event.getType().name());
+    }
+
+    @EventListener
+    public void onUsersReloaded(UsersReloadedEvent event) {
+        record(null, RELOADED);
+    }
+
+    @EventListener
+    public void onUsersArchived(UsersArchivedEvent event) {
+        // one change per user, the other instances only drop what they cached of these users
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> changes = new ArrayList<>();
+        for (Long userId : event.getUserIds()) {
+            changes.add(new Object[]{nodeId, userId, ARCHIVED, now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO cluster_change (node_id, user_id, change_type, created_at) "
+                + "VALUES (?, ?, ?, ?)", changes);
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.poll-interval-ms:500}")
+    public void poll() {
+        List<Object[]> changes = jdbcTemplate.query(
+                "SELECT id, node_id, user_id, change_type FROM cluster_change WHERE id > ? ORDER BY id LIMIT "
+                        + POLL_LIMIT,
+                (resultSet, rowNum) -> new Object[]{
+                        resultSet.getLong("id"),
+                        resultSet.getString("node_id"),
+                        resultSet.getObject("user_id") == null ? null : resultSet.getLong("user_id"),
+                        resultSet.getString("change_type")},
+                cursor);
+
+        for (Object[] change : changes) {
+            long id = (Long) change[0];
+            if (!processedAboveCursor.add(id)) {
+                continue;
+            }
+            if (!nodeId.equals(change[1])) {
+                eventPublisher.publishEvent(
+                        new RemoteUserChangedEvent((String) change[1], (Long) change[2], (String) change[3]));
+            }
+        }
+        advanceCursor();
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.cleanup-interval-ms:60000}")
+    public void cleanup() {
+        jdbcTemplate.update("DELETE FROM cluster_change WHERE created_at < ?",
+                new Timestamp(System.currentTimeMillis() - retentionMillis));
+    }
+
+    private void record(Long userId, String type) {
+        jdbcTemplate.update("INSERT INTO cluster_change (node_id, user_id, change_type, created_at) VALUES (?, ?, ?, ?)",
+                nodeId, userId, type, new Timestamp(System.currentTimeMillis()));
+    }
+
+    private void advanceCursor() {
+        while (processedAboveCursor.remove(cursor + 1)) {
+            cursor++;
+        }
+        if (processedAboveCursor.isEmpty()) {
+            gapSince = 0;
+            return;
+        }
+
+        // there is a gap below the processed changes
+        long now = System.currentTimeMillis();
+        if (gapSince == 0) {
+            gapSince = now;
+        }
+        else if (now - gapSince > gapTimeoutMillis) {
+            // the missing change has been rolled back (or is lost), skip it
+            cursor = processedAboveCursor.first() - 1;
+            gapSince = 0;
+            advanceCursor();
+        }
+    }
+}
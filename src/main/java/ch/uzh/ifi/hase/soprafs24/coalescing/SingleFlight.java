@@ -0,0 +1,108 @@
+package ch.uzh.ifi.hase.soprafs24.coalescing;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single Flight
+ * Runs at most one load per key at a time: the first caller for a key loads
+ * the value on its own thread, every caller arriving while that load is still
+ * running waits for it and gets the same value (or the same exception).
+ * Nothing is kept after the load, later callers start a new one. A caller may
+ * still get a value that was loaded before a write it already knows about, if
+ * it joins a load that started earlier; callers that must not see such values
+ * (e.g., to cache them) have to include a version in the key.
+ * Waiting callers give up after the timeout with 503.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SingleFlight(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, load);
+        if (running == null) {
+            return load(key, load, loader);
+        }
+        coalesced.increment();
+        return await(running);
+    }
+
+    private V load(K key, CompletableFuture<V> load, Supplier<V> loader) {
+        loads.increment();
+        try {
+            V value = loader.get();
+            load.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private V await(CompletableFuture<V> running) {
+        try {
+            return running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            timeouts.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Timed out waiting for a concurrent load");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for a concurrent load");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return number of loads that were actually run
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return number of calls that were served by the load of another caller
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs24.coalescing;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User Read Coalescer
+ * Sits in front of the read methods of the UserService for the GET endpoints:
+ * concurrent requests for the same user (or the user list, or the same bulk
+ * lookup) share one database load, see SingleFlight.
+ * The loaded users are shared between the requests, so they must only be read,
+ * never modified. Writes keep going to the UserService directly.
+ * Loads for the UserJsonCache are additionally keyed by the cache generation
+ * of the miss: a caller that missed after a write must not join a load that
+ * started before it, the cache would keep the outdated result.
+ * Exported as the metrics user.reads.loads, user.reads.coalesced and
+ * user.reads.coalesce.timeouts, tagged with the read (by-id, list, lookup).
+ */
+@Component
+public class UserReadCoalescer implements MeterBinder {
+
+    private final UserService userService;
+
+    // loads outside of the cache, never equal to a cache generation
+    private static final long NO_GENERATION = -1;
+
+    // keyed by [id, cache generation]
+    private final SingleFlight<List<Long>, User> byId;
+    // keyed by the cache generation
+    private final SingleFlight<Long, List<User>> list;
+    private final SingleFlight<List<Long>, Map<Long, User>> lookup;
+
+    public UserReadCoalescer(UserService userService,
+                             @Value("${coalescing.timeout-ms:2000}") long timeoutMillis) {
+        this.userService = userService;
+        this.byId = new SingleFlight<>(timeoutMillis);
+        this.list = new SingleFlight<>(timeoutMillis);
+        this.lookup = new SingleFlight<>(timeoutMillis);
+    }
+
+    public User getUserById(Long id) {
+        return getUserById(id, NO_GENERATION);
+    }
+
+    /**
+     * @param generation generation of the UserJsonCache miss, see UserJsonCache.getProfile()
+     */
+    public User getUserById(Long id, long generation) {
+        return byId.execute(Arrays.asList(id, generation), () -> userService.getUserById(id));
+    }
+
+    public List<User> getUsers() {
+        return getUsers(NO_GENERATION);
+    }
+
+    /**
+     * @param generation generation of the UserJsonCache miss, see UserJsonCache.getList()
+     */
+    public List<User> getUsers(long generation) {
+        return list.execute(generation, userService::getUsers);
+    }
+
+    public Map<Long, User> getUsersByIds(List<Long> ids) {
+        // copy, the key must not change while the load is running
+        return lookup.execute(new ArrayList<>(ids), () -> userService.getUsersByIds(ids));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "by-id", byId);
+        bind(registry, "list", list);
+        bind(registry, "lookup", lookup);
+    }
+
+    private static void bind(MeterRegistry registry, String read, SingleFlight<?, ?> singleFlight) {
+        FunctionCounter.builder("user.reads.loads", singleFlight, SingleFlight::getLoads)
+                .tag("read", read)
+                .description("User reads that went to the database")
+                .register(registry);
+        FunctionCounter.builder("user.reads.coalesced", singleFlight, SingleFlight::getCoalesced)
+                .tag("read", read)
+                .description("User reads served by a concurrent identical read")
+                .register(registry);
+        FunctionCounter.builder("user.reads.coalesce.timeouts", singleFlight, SingleFlight::getTimeouts)
+                .tag("read", read)
+                .description("User reads that gave up waiting for a concurrent identical read")
+                .register(registry);
+    }
+}
@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read Write DataSource Configuration
+ * Replaces the single auto-configured pool by two pools: the primary one for
+ * read-write transactions and a read-only replica pool for read-only
+ * transactions, so read-heavy traffic does not compete with writes for
+ * primary connections. Only the routing DataSource is a DataSource bean, the
+ * pools live in ReadWriteDataSources.
+ * The replica points to datasource.replica.url, or to the primary database
+ * if that is not set (which is what the in-memory H2 setup does).
+ * Enabled with datasource.routing.enabled=true, unless the users are sharded
+ * (sharding.enabled=true), see ShardingConfig.
+ */
+@Configuration
+@ConditionalOnExpression("${datasource.routing.enabled:false} and !${sharding.enabled:false}")
+public class ReadWriteDataSourceConfig {
+
+    @Bean
+    public ReadWriteDataSources readWriteDataSources(DataSourceProperties properties, Environment environment,
+                                                     @Value("${datasource.replica.url:}") String replicaUrl) {
+        Binder binder = Binder.get(environment);
+
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("datasource.replica.hikari", Bindable.ofInstance(replica));
+        if (!replicaUrl.isEmpty()) {
+            replica.setJdbcUrl(replicaUrl);
+        }
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        return new ReadWriteDataSources(primary, replica);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteDataSources readWriteDataSources) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReadWriteRoutingDataSource.Route.PRIMARY, readWriteDataSources.getPrimary());
+        targets.put(ReadWriteRoutingDataSource.Route.REPLICA, readWriteDataSources.getReplica());
+
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(readWriteDataSources.getPrimary());
+        routingDataSource.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
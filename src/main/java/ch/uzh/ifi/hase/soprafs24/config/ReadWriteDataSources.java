@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Read Write DataSources
+ * The primary and the replica connection pool behind the
+ * ReadWriteRoutingDataSource. Deliberately not DataSource beans themselves:
+ * Spring Boot's DataSource initialization would then run on a pool while the
+ * routing DataSource is still being created. For the same reason Boot does not
+ * bind their hikaricp.* metrics, bindTo() does.
+ */
+public class ReadWriteDataSources implements MeterBinder, AutoCloseable {
+
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+
+    public ReadWriteDataSources(HikariDataSource primary, HikariDataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    public HikariDataSource getReplica() {
+        return replica;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        primary.setMetricRegistry(registry);
+        replica.setMetricRegistry(registry);
+    }
+
+    @Override
+    public void close() {
+        replica.close();
+        primary.close();
+    }
+}
@@ -0,0 +1,24 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read Write Routing DataSource
+ * Hands out connections of the replica pool inside read-only transactions
+ * (@Transactional(readOnly = true)) and of the primary pool otherwise.
+ * Must be wrapped in a LazyConnectionDataSourceProxy, since the read-only flag
+ * of a transaction is only set after the transaction manager has asked for a
+ * connection.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY, REPLICA
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.REPLICA : Route.PRIMARY;
+    }
+}
@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Virtual Thread Configuration
+ * Serves every request on its own virtual thread instead of Tomcat's pool of
+ * server.tomcat.threads.max platform threads. The blocking JDBC calls of the
+ * repositories then park the virtual thread and free the carrier thread, so
+ * the number of requests waiting for the database is no longer capped by the
+ * thread pool but by the connection pool (spring.datasource.hikari.*) and the
+ * limits of the ConcurrencyLimitFilter.
+ * Enabled with threads.virtual.enabled=true, requires Java 21.
+ */
+@Configuration
+@ConditionalOnProperty(name = "threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public Executor virtualThreadRequestExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(Executor virtualThreadRequestExecutor) {
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadRequestExecutor);
+    }
+}
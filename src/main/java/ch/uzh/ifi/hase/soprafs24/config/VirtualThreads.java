@@ -0,0 +1,56 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual Threads
+ * Creates virtual threads (Java 21). The code is compiled for Java 17
+ * (options.release in build.gradle, Spring 5.3 cannot read newer class files),
+ * so the Java 21 API is looked up reflectively.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param prefix name prefix of the threads, followed by a counter
+     * @return a factory for virtual threads, i.e. Thread.ofVirtual().name(prefix, 0).factory()
+     * @throws IllegalStateException if the JVM has no virtual threads
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        }
+        catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or newer, running on Java "
+                    + System.getProperty("java.version"), e);
+        }
+        catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create a virtual thread factory", e);
+        }
+    }
+
+    /**
+     * @return an executor that runs every task on a new virtual thread
+     */
+    public static Executor newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory threadFactory = newThreadFactory(prefix);
+        return task -> threadFactory.newThread(task).start();
+    }
+}
@@ -0,0 +1,37 @@
+package ch.uzh.ifi.hase.soprafs24.constant;
+
+/**
+ * The fields of a user that can be selected with the fields= parameter of
+ * GET /users and GET /users/{id}. The name is both the JSON property of
+ * UserGetDTO and the attribute of the User entity.
+ */
+public enum UserField {
+    ID("id"),
+    NAME("name"),
+    USERNAME("username"),
+    STATUS("status"),
+    CREATION_DATE("creationDate"),
+    BIRTH_DATE("birthDate");
+
+    private final String fieldName;
+
+    UserField(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return the field with the given name, null if there is none
+     */
+    public static UserField fromFieldName(String fieldName) {
+        for (UserField field : values()) {
+            if (field.fieldName.equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
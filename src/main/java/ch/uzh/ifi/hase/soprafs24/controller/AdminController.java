@@ -0,0 +1,119 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.jfr.FlightRecordings;
+import ch.uzh.ifi.hase.soprafs24.snapshot.UserSnapshotService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admin Controller
+ * Operational endpoints that are not part of the public API. Every request
+ * needs the X-Admin-Token header to match admin.token; without a configured
+ * token, all admin endpoints answer 404.
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
+    private final UserSnapshotService userSnapshotService;
+    private final FlightRecordings flightRecordings;
+    private final String adminToken;
+
+    AdminController(UserSnapshotService userSnapshotService, FlightRecordings flightRecordings,
+                    @Value("${admin.token:}") String adminToken) {
+        this.userSnapshotService = userSnapshotService;
+        this.flightRecordings = flightRecordings;
+        this.adminToken = adminToken;
+    }
+
+    @PostMapping("/snapshot/export")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> exportSnapshot(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token)
+            throws IOException {
+        checkAdminToken(token);
+        long count = userSnapshotService.export(userSnapshotService.getSnapshotPath());
+        return snapshotResult(count);
+    }
+
+    @PostMapping("/snapshot/restore")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> restoreSnapshot(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token)
+            throws IOException {
+        checkAdminToken(token);
+        long count = userSnapshotService.restore(userSnapshotService.getSnapshotPath());
+        return snapshotResult(count);
+    }
+
+    @PostMapping("/jfr/start")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> startRecording(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token)
+            throws IOException, ParseException {
+        checkAdminToken(token);
+        if (!flightRecordings.start()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A recording is running already");
+        }
+        return recordingResult(null);
+    }
+
+    @PostMapping("/jfr/dump")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> dumpRecording(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token)
+            throws IOException {
+        checkAdminToken(token);
+        return recordingResult(flightRecordings.dump());
+    }
+
+    @PostMapping("/jfr/stop")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> stopRecording(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token)
+            throws IOException {
+        checkAdminToken(token);
+        return recordingResult(flightRecordings.stop());
+    }
+
+    private Map<String, Object> recordingResult(Path file) throws IOException {
+        Map<String, Object> result = new HashMap<>();
+        result.put("running", flightRecordings.isRunning());
+        if (file != null) {
+            result.put("path", file.toString());
+            result.put("bytes", Files.size(file));
+        }
+        return result;
+    }
+
+    private Map<String, Object> snapshotResult(long count) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("path", userSnapshotService.getSnapshotPath().toString());
+        result.put("users", count);
+        return result;
+    }
+
+    private void checkAdminToken(String token) {
+        if (adminToken.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        // constant time comparison, so the token cannot be guessed byte by byte
+        if (token == null || !MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Invalid admin token");
+        }
+    }
+}
@@ -1,19 +1,38 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.cache.UserJsonCache;
+import ch.uzh.ifi.hase.soprafs24.coalescing.UserReadCoalescer;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserChangesDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserLoginDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserLookupDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserStatsDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.security.LoginRateLimiter;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import ch.uzh.ifi.hase.soprafs24.stats.UserStatistics;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Date; // ADDED
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 /**
@@ -26,44 +45,126 @@ import java.util.Date; // ADDED
 @RestController
 public class UserController {
 
+    private static final String AVAILABLE_FIELDS = Arrays.stream(UserField.values())
+            .map(UserField::getFieldName)
+            .collect(Collectors.joining(","));
+
     private final UserService userService;
+    private final LoginRateLimiter loginRateLimiter;
+    private final UserJsonCache userJsonCache;
+    private final UserReadCoalescer userReads;
+    private final UserStatistics userStatistics;
 
-    UserController(UserService userService) {
+    UserController(UserService userService, LoginRateLimiter loginRateLimiter, UserJsonCache userJsonCache,
+                   UserReadCoalescer userReads, UserStatistics userStatistics) {
         this.userService = userService;
+        this.loginRateLimiter = loginRateLimiter;
+        this.userJsonCache = userJsonCache;
+        this.userReads = userReads;
+        this.userStatistics = userStatistics;
     }
 
     // TEST STATUS: TEST IMPLEMENTED FOR GETTING ALL USERS
     @GetMapping("/users")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<UserGetDTO> getAllUsers() {
-        // fetch all users in the internal representation
-        List<User> users = userService.getUsers();
-        List<UserGetDTO> userGetDTOs = new ArrayList<>();
-
-        // convert each user to the API representation
-        for (User user : users) {
-            userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    public ResponseEntity<?> getAllUsers(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (prefersCbor(accept)) {
+            List<UserGetDTO> userGetDTOs = new ArrayList<>();
+            for (User user : userReads.getUsers()) {
+                userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_CBOR).body(userGetDTOs);
         }
-        return userGetDTOs;
+
+        // the serialized list is only rebuilt after a user has been written
+        byte[] body = userJsonCache.getList(generation -> userReads.getUsers(generation));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // TEST STATUS: IMPLEMENTED
+    @GetMapping(value = "/users", params = {"fields", "!ids"})
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<Map<String, Object>> getAllUserFields(@RequestParam String fields) {
+        // Only the requested columns are selected, no entities, no DTOMapper, no cache
+        return userService.getUsers(parseFields(fields));
+    }
+
+    // TEST STATUS: IMPLEMENTED
+    @GetMapping(value = "/users", params = "ids")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserLookupDTO lookupUsers(@RequestParam List<Long> ids) {
+        // Fetch all requested users at once instead of one request per user
+        Map<Long, User> usersById = userReads.getUsersByIds(ids);
+
+        UserLookupDTO userLookupDTO = new UserLookupDTO();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            if (id == null) {
+                continue;
+            }
+            User user = usersById.get(id);
+            if (user != null) {
+                userLookupDTO.getUsers().add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+            }
+            else {
+                userLookupDTO.getMissingIds().add(id);
+            }
+        }
+        return userLookupDTO;
+    }
+
+    // TEST STATUS: IMPLEMENTED
+    @GetMapping("/users/changes")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserChangesDTO getUserChanges(@RequestParam(defaultValue = "0") long since,
+                                         @RequestParam(defaultValue = "500") int limit) {
+        // Only the users changed since the client's last sync instead of the whole list
+        List<User> changedUsers = userService.getChangesSince(since, limit);
+
+        UserChangesDTO userChangesDTO = new UserChangesDTO();
+        long nextSince = since;
+        for (User user : changedUsers) {
+            userChangesDTO.getUsers().add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+            nextSince = user.getChangeSeq();
+        }
+        userChangesDTO.setNextSince(nextSince);
+        userChangesDTO.setHasMore(changedUsers.size() == limit);
+        return userChangesDTO;
+    }
+
+    // TEST STATUS: IMPLEMENTED
+    @GetMapping("/users/stats")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserStatsDTO getUserStats() {
+        // Served from the in-memory counters, the user table is not queried
+        UserStatsDTO userStatsDTO = new UserStatsDTO();
+        userStatsDTO.setTotal(userStatistics.getTotal());
+        userStatistics.getCountsByStatus().forEach((status, count) -> userStatsDTO.getByStatus().put(status.name(), count));
+        userStatistics.getRegistrationsPerDay().forEach((day, count) ->
+                userStatsDTO.getRegistrationsPerDay().put(day.toString(), count));
+        if (userStatistics.getReconciledAt() > 0) {
+            userStatsDTO.setReconciledAt(new Date(userStatistics.getReconciledAt()));
+        }
+        return userStatsDTO;
     }
 
     // TEST STATUS: TEST IMPLEMENTED FOR CORRECT REGISTRATION FUNCTIONALITY
     @PostMapping("/users/registration")
     @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
-    public UserGetDTO createUser(@RequestBody UserPostDTO userPostDTO) {
+    public UserLoginDTO createUser(@RequestBody UserPostDTO userPostDTO) {
         // Convert API user to internal representation
         User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
 
-        // Set creation date
-        userInput.setCreationDate(new Date());
-
         // Create user
         User createdUser = userService.createUser(userInput);
 
-        // Convert internal representation of user back to API
-        return DTOMapper.INSTANCE.convertEntityToUserGetDTO(createdUser);
+        // Convert internal representation of user back to API, with the token of the new session
+        return DTOMapper.INSTANCE.convertEntityToUserLoginDTO(createdUser);
     }
 
 
@@ -72,12 +173,15 @@ public class UserController {
     @PostMapping("/users/login")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public UserGetDTO login(@RequestBody UserPostDTO userPostDTO) {
+    public UserLoginDTO login(@RequestBody UserPostDTO userPostDTO, HttpServletRequest request) {
+        // Reject throttled attempts before any database lookup
+        loginRateLimiter.checkLoginAttempt(userPostDTO.getUsername(), request.getRemoteAddr());
+
         User user = userService.checkLoginCredentials(userPostDTO);
 
         userService.updateStatus(user, UserStatus.ONLINE);
 
-        return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+        return DTOMapper.INSTANCE.convertEntityToUserLoginDTO(user);
     }
 
     @PostMapping("/users/logout")
@@ -96,12 +200,25 @@ public class UserController {
     @GetMapping("/users/{id}")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public UserGetDTO getUserProfile(@PathVariable Long id) {
-        // Fetch the user by username
-        User user = userService.getUserById(id);
+    public ResponseEntity<?> getUserProfile(@PathVariable Long id,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (prefersCbor(accept)) {
+            UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(userReads.getUserById(id));
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_CBOR).body(userGetDTO);
+        }
+
+        // Fetch the serialized profile, the user is only loaded and converted on a cache miss,
+        // concurrent misses for the same user (and cache generation) share one load
+        byte[] body = userJsonCache.getProfile(id, generation -> userReads.getUserById(id, generation));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
 
-        // Convert the user to the API representation
-        return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+    // TEST STATUS: IMPLEMENTED
+    @GetMapping(value = "/users/{id}", params = "fields")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> getUserProfileFields(@PathVariable Long id, @RequestParam String fields) {
+        return userService.getUserById(id, parseFields(fields));
     }
 
     // TEST STATUS: IMPLEMENTED
@@ -131,5 +248,42 @@ public class UserController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Parses a comma separated list of UserGetDTO fields, e.g. "id,username".
+     * Duplicates are ignored, unknown fields are rejected with 400.
+     */
+    private static List<UserField> parseFields(String fields) {
+        Set<UserField> selected = new LinkedHashSet<>();
+        for (String fieldName : fields.split(",")) {
+            UserField field = UserField.fromFieldName(fieldName.trim());
+            if (field == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field '" + fieldName.trim()
+                        + "', the available fields are " + AVAILABLE_FIELDS);
+            }
+            selected.add(field);
+        }
+        return new ArrayList<>(selected);
+    }
 
-}
\ No newline at end of file
+    /**
+     * The cached responses are JSON, so the CBOR representation is only produced
+     * if the client explicitly prefers it over JSON. All other endpoints
+     * negotiate the format through the registered message converters.
+     */
+    private static boolean prefersCbor(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                return true;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,36 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.warmup.JitWarmup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warmup Controller
+ * App Engine sends GET /_ah/warmup to a new instance before routing traffic to
+ * it (inbound_services: warmup in app.yaml). The request is answered once the
+ * JitWarmup is over, or with 503 if it takes longer than warmup.timeout-ms.
+ */
+@RestController
+public class WarmupController {
+
+    private final JitWarmup jitWarmup;
+    private final long timeoutMillis;
+
+    WarmupController(JitWarmup jitWarmup, @Value("${warmup.timeout-ms:60000}") long timeoutMillis) {
+        this.jitWarmup = jitWarmup;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @GetMapping("/_ah/warmup")
+    public String warmup() throws InterruptedException {
+        if (!jitWarmup.awaitCompletion(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Warm-up still running");
+        }
+        return "warmed up in " + jitWarmup.getDurationMillis() + " ms";
+    }
+}
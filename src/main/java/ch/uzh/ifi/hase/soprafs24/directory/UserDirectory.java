@@ -0,0 +1,174 @@
+package ch.uzh.ifi.hase.soprafs24.directory;
+
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UsersReloadedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User Directory
+ * Every registered username (including archived users) with its id in a
+ * UsernameTable, i.e. off-heap in a memory-mapped file at directory.path. The
+ * UserService asks it before going to the database with a username: logins
+ * with an unknown username and registrations with a fresh username then cost
+ * no query on the username index.
+ * Only "absent" answers are trusted. A username the directory knows is still
+ * looked up in the database, so stale entries (e.g., after users were deleted
+ * directly in the database) only cost the query that would have run anyway.
+ * The table is kept up to date from the committed UserChangedEvents and
+ * rebuilt from the USER and USER_ARCHIVE tables on a UsersReloadedEvent and
+ * on every startup, once all singletons (and with them both tables) exist but
+ * before the web server accepts requests. The file of the last run is never
+ * reused: the database may have changed in between (e.g., an in-memory
+ * database or a restored backup), and a stale table would reject existing
+ * usernames as absent. Until the first rebuild, nothing is reported absent.
+ * The directory only sees the registrations of this instance, so it is not
+ * used in clustered or sharded mode. If the file cannot be used, the directory
+ * disables itself and all checks go to the database.
+ */
+@Component
+public class UserDirectory implements SmartInitializingSingleton {
+
+    private final Logger log = LoggerFactory.getLogger(UserDirectory.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path path;
+    private final int initialCapacity;
+
+    private volatile UsernameTable table;
+
+    // odd until the first rebuild and while the table is rebuilt, lookups are not trusted then
+    private final AtomicLong generation = new AtomicLong(1);
+
+    public UserDirectory(DataSource dataSource,
+                         @Value("${directory.enabled:true}") boolean enabled,
+                         @Value("${directory.path:${java.io.tmpdir}/soprafs24/users.dir}") String path,
+                         @Value("${directory.initial-capacity:1048576}") int initialCapacity,
+                         @Value("${cluster.enabled:false}") boolean clustered,
+                         @Value("${sharding.enabled:false}") boolean sharded) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // the rebuild streams all usernames
+        this.jdbcTemplate.setFetchSize(10_000);
+        this.path = Paths.get(path);
+        this.initialCapacity = initialCapacity;
+        if (enabled && !clustered && !sharded) {
+            open();
+        }
+    }
+
+    private void open() {
+        try {
+            table = UsernameTable.open(path, initialCapacity);
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("User directory {} could not be opened, usernames are looked up in the database", path, e);
+        }
+    }
+
+    /**
+     * @return true if there is certainly no user with the given username,
+     * false if there may be one (or the directory cannot tell)
+     */
+    public boolean isAbsent(String username) {
+        UsernameTable current = table;
+        if (current == null || username == null) {
+            return false;
+        }
+        long before = generation.get();
+        if ((before & 1) != 0) {
+            return false;
+        }
+        return current.get(username) == UsernameTable.ABSENT && generation.get() == before;
+    }
+
+    // usernames never change, only new users (and rehydrated ones, which are present already) are added
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        UsernameTable current = table;
+        if (current == null || event.getType() != UserChangedEvent.Type.CREATED) {
+            return;
+        }
+        try {
+            current.put(event.getUser().getUsername(), event.getUserId());
+        }
+        catch (IOException | RuntimeException e) {
+            disable(e);
+        }
+    }
+
+    @EventListener
+    public void onUsersReloaded(UsersReloadedEvent event) {
+        rebuild();
+    }
+
+    // all beans are up (e.g. USER_ARCHIVE exists), the web server is only started after this
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Replaces the table with the usernames of the USER and USER_ARCHIVE tables.
+     */
+    public synchronized void rebuild() {
+        UsernameTable current = table;
+        if (current == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        if ((generation.get() & 1) == 0) {
+            generation.incrementAndGet();
+        }
+        try {
+            current.clear();
+            // a user being rehydrated may be in both tables
+            jdbcTemplate.query("SELECT id, username FROM user UNION ALL SELECT id, username FROM user_archive",
+                    resultSet -> {
+                        try {
+                            current.putIfAbsent(resultSet.getString(2), resultSet.getLong(1));
+                        }
+                        catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+            generation.incrementAndGet();
+            log.info("Rebuilt user directory with {} usernames in {} ms", current.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        catch (IOException | RuntimeException e) {
+            // the generation stays odd, nothing is trusted any more
+            disable(e);
+        }
+    }
+
+    private void disable(Exception e) {
+        log.warn("User directory {} disabled, usernames are looked up in the database", path, e);
+        UsernameTable current = table;
+        table = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        UsernameTable current = table;
+        table = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package ch.uzh.ifi.hase.soprafs24.directory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Username Table
+ * Open-addressing hash table from username to user id in a
+ * memory-mapped file, i.e. outside of the Java heap: millions of entries cost
+ * the garbage collector nothing. The file is scratch space, every open()
+ * starts with an empty table.
+ *
+ * Layout of the file:
+ * - header (HEADER_SIZE bytes): magic, version, capacity, key heap size
+ * - capacity slots of SLOT_SIZE bytes: hash (0 = empty), id, offset and
+ *   length of the key
+ * - key heap: the usernames as UTF-16 chars, so lookups compare them without
+ *   encoding (and allocating)
+ * Collisions are resolved by linear probing; at 75% load or with a full key
+ * heap, the table is rehashed into a file of twice the size. Entries are
+ * never removed, only clear() empties the table.
+ *
+ * Writes are serialized, reads take no lock: a slot's hash is published last
+ * with release semantics and read with acquire semantics, so a reader that
+ * sees the hash also sees the rest of the slot. A single mapping is limited
+ * to 2 GB, i.e. MAX_CAPACITY slots. The file is locked while it is open, a
+ * second table on the same file (in this or another process) fails to open.
+ */
+final class UsernameTable implements Closeable {
+
+    static final long ABSENT = -1;
+
+    static final int MAX_CAPACITY = 1 << 25;
+    static final int MAX_KEY_LENGTH = Short.MAX_VALUE;
+
+    private static final int MAGIC = 0x55534452;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int HEAP_CAPACITY_OFFSET = 12;
+
+    private static final int SLOT_SIZE = 24;
+    private static final int SLOT_ID = 8;
+    private static final int SLOT_KEY_OFFSET = 16;
+    private static final int SLOT_KEY_LENGTH = 20;
+
+    // bytes of key heap per slot, i.e. 10 chars per slot or 13 chars per entry at full load
+    private static final int HEAP_BYTES_PER_SLOT = 20;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final FileChannel lockChannel;
+
+    // replaced by grow() and clear(), readers keep using the one they started with
+    private volatile Region region;
+
+    // guarded by this
+    private int size;
+    private int heapUsed;
+
+    private UsernameTable(Path path, FileChannel lockChannel, Region region) {
+        this.path = path;
+        this.lockChannel = lockChannel;
+        this.region = region;
+    }
+
+    /**
+     * Opens a new, empty table in the given file, replacing whatever the file
+     * held before.
+     *
+     * @param initialCapacity number of slots of a new table, rounded up to a power of two
+     */
+    static UsernameTable open(Path path, int initialCapacity) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        FileChannel lockChannel = lock(path.resolveSibling(path.getFileName() + ".lock"));
+        try {
+            return new UsernameTable(path, lockChannel, Region.create(path, capacityFor(initialCapacity)));
+        }
+        catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    private static FileChannel lock(Path lockPath) throws IOException {
+        FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+        }
+        catch (OverlappingFileLockException e) {
+            // locked within this JVM, e.g. by a second application context
+        }
+        channel.close();
+        throw new IOException(lockPath + " is in use");
+    }
+
+    /**
+     * @return the id of the user with the given username, ABSENT if there is none
+     */
+    long get(String username) {
+        Region current = region;
+        int slot = find(current, username, hash(username));
+        return slot < 0 ? ABSENT : (long) LONGS.getAcquire(current.buffer, slot + SLOT_ID);
+    }
+
+    /**
+     * Adds the username or replaces its id.
+     */
+    synchronized void put(String username, long id) throws IOException {
+        put(username, id, true);
+    }
+
+    /**
+     * Adds the username unless it is present already, an existing entry is
+     * left as it is.
+     */
+    synchronized void putIfAbsent(String username, long id) throws IOException {
+        put(username, id, false);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries, keeping the capacity.
+     */
+    synchronized void clear() throws IOException {
+        size = 0;
+        heapUsed = 0;
+        replaceRegion(Region.create(tempPath(), region.capacity));
+    }
+
+    @Override
+    public synchronized void close() {
+        region.close();
+        try {
+            lockChannel.close();
+        }
+        catch (IOException e) {
+            // releases the lock anyway
+        }
+    }
+
+    private void put(String username, long id, boolean replace) throws IOException {
+        if (username.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Username longer than " + MAX_KEY_LENGTH + " chars");
+        }
+        long hash = hash(username);
+        Region current = region;
+        int slot = find(current, username, hash);
+        if (slot >= 0) {
+            if (replace) {
+                LONGS.setRelease(current.buffer, slot + SLOT_ID, id);
+            }
+            return;
+        }
+
+        if ((size + 1) * 4L > current.capacity * 3L || heapUsed + 2L * username.length() > current.heapCapacity) {
+            grow();
+            current = region;
+        }
+        insert(current, username, hash, id, heapUsed);
+        heapUsed += 2 * username.length();
+        size++;
+    }
+
+    // the new entry must not be present yet, and there must be room for it
+    private static void insert(Region region, String username, long hash, long id, int keyOffset) {
+        MappedByteBuffer buffer = region.buffer;
+        for (int i = 0; i < username.length(); i++) {
+            buffer.putChar(region.heapStart + keyOffset + 2 * i, username.charAt(i));
+        }
+        int mask = region.capacity - 1;
+        int index = (int) hash & mask;
+        while (buffer.getLong(slotOffset(index)) != 0) {
+            index = (index + 1) & mask;
+        }
+        int slot = slotOffset(index);
+        buffer.putLong(slot + SLOT_ID, id);
+        buffer.putInt(slot + SLOT_KEY_OFFSET, keyOffset);
+        buffer.putShort(slot + SLOT_KEY_LENGTH, (short) username.length());
+        // last, readers only look at slots with a hash
+        LONGS.setRelease(buffer, slot, hash);
+    }
+
+    /**
+     * @return the offset of the slot holding the username, -1 if there is none
+     */
+    private static int find(Region region, String username, long hash) {
+        MappedByteBuffer buffer = region.buffer;
+        int mask = region.capacity - 1;
+        int index = (int) hash & mask;
+        for (int probes = 0; probes < region.capacity; probes++) {
+            int slot = slotOffset(index);
+            long stored = (long) LONGS.getAcquire(buffer, slot);
+            if (stored == 0) {
+                return -1;
+            }
+            if (stored == hash && keyEquals(region, slot, username)) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean keyEquals(Region region, int slot, String username) {
+        MappedByteBuffer buffer = region.buffer;
+        if (buffer.getShort(slot + SLOT_KEY_LENGTH) != username.length()) {
+            return false;
+        }
+        int key = region.heapStart + buffer.getInt(slot + SLOT_KEY_OFFSET);
+        for (int i = 0; i < username.length(); i++) {
+            if (buffer.getChar(key + 2 * i) != username.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() throws IOException {
+        Region current = region;
+        if (current.capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Username table is full at " + size + " entries");
+        }
+        Region grown = Region.create(tempPath(), current.capacity * 2);
+        // rehash, the keys are packed into the new heap in slot order
+        int keyOffset = 0;
+        for (int index = 0; index < current.capacity; index++) {
+            int slot = slotOffset(index);
+            long hash = current.buffer.getLong(slot);
+            if (hash == 0) {
+                continue;
+            }
+            int length = current.buffer.getShort(slot + SLOT_KEY_LENGTH);
+            int key = current.heapStart + current.buffer.getInt(slot + SLOT_KEY_OFFSET);
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = current.buffer.getChar(key + 2 * i);
+            }
+            insert(grown, new String(chars), hash, current.buffer.getLong(slot + SLOT_ID), keyOffset);
+            keyOffset += 2 * length;
+        }
+        heapUsed = keyOffset;
+        replaceRegion(grown);
+    }
+
+    private void replaceRegion(Region replacement) throws IOException {
+        Region current = region;
+        Files.move(tempPath(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        region = replacement;
+        // the old mapping stays valid for readers still using it until it is garbage collected
+        current.close();
+    }
+
+    private Path tempPath() {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    private static int slotOffset(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(entries, MAX_CAPACITY)));
+        return capacity < entries ? Math.min(capacity * 2, MAX_CAPACITY) : capacity;
+    }
+
+    // FNV-1a over the chars with a final mix, never 0 (the marker of an empty slot)
+    static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < username.length(); i++) {
+            hash ^= username.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * One mapping of the table file.
+     */
+    private static final class Region {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int heapStart;
+        private final int heapCapacity;
+
+        private Region(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.getInt(CAPACITY_OFFSET);
+            this.heapCapacity = buffer.getInt(HEAP_CAPACITY_OFFSET);
+            this.heapStart = slotOffset(capacity);
+        }
+
+        static Region create(Path path, int capacity) throws IOException {
+            long heapCapacity = (long) capacity * HEAP_BYTES_PER_SLOT;
+            long fileSize = HEADER_SIZE + (long) capacity * SLOT_SIZE + heapCapacity;
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Username table of " + capacity + " slots exceeds 2 GB");
+            }
+            Files.deleteIfExists(path);
+            // a sparse file, the zeros are not written
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(HEAP_CAPACITY_OFFSET, (int) heapCapacity);
+            return new Region(channel, buffer);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                // the mapping itself stays valid, nothing is lost
+            }
+        }
+    }
+}
@@ -17,11 +17,15 @@ import java.util.Date; // ADDED
  * the primary key
  */
 @Entity
-@Table(name = "USER")
+@Table(name = "USER", indexes = @Index(name = "idx_user_change_seq", columnList = "change_seq"),
+        uniqueConstraints = @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"))
 public class User implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // named, so that a violation can be told apart from the others, see UserService
+    public static final String USERNAME_CONSTRAINT = "uk_user_username";
+
     @Id
     @GeneratedValue
     private Long id;
@@ -29,15 +33,36 @@ public class User implements Serializable {
     @Column(nullable = false)
     private String name;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String username;
 
     @Column(nullable = false, unique = true)
     private String token;
 
+    // the token is only valid until then, see TokenService
+    @Column
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date tokenExpiresAt;
+
     @Column(nullable = false)
     private UserStatus status;
 
+    // bcrypt hash, the raw password is never stored
+    @Column
+    private String passwordHash;
+
+    // raw password as received during registration, only used to compute passwordHash
+    @Transient
+    private String password;
+
+    // loaded from the UserArchive instead of this table, see UserService
+    @Transient
+    private boolean archived;
+
+    // position in the change feed, bumped on every visible change, see ChangeSequence
+    @Column(name = "change_seq")
+    private Long changeSeq;
+
     // ADDED -->
     @Column(nullable = false)
     @Temporal(TemporalType.TIMESTAMP)
@@ -80,6 +105,14 @@ public class User implements Serializable {
         this.token = token;
     }
 
+    public Date getTokenExpiresAt() {
+        return tokenExpiresAt;
+    }
+
+    public void setTokenExpiresAt(Date tokenExpiresAt) {
+        this.tokenExpiresAt = tokenExpiresAt;
+    }
+
     public UserStatus getStatus() {
         return status;
     }
@@ -88,6 +121,38 @@ public class User implements Serializable {
         this.status = status;
     }
 
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public boolean isArchived() {
+        return archived;
+    }
+
+    public void setArchived(boolean archived) {
+        this.archived = archived;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
     public User() {
         this.creationDate = new Date();
     }
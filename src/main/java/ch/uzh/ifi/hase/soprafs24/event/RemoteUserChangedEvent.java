@@ -0,0 +1,36 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+/**
+ * Remote User Changed Event
+ * Published when another instance of the cluster reports that it has written
+ * a user. Unlike a UserChangedEvent, only the id of the user is known; a null
+ * id means that users have been reloaded in bulk.
+ */
+public class RemoteUserChangedEvent {
+
+    private final String nodeId;
+    private final Long userId;
+    private final String type;
+
+    public RemoteUserChangedEvent(String nodeId, Long userId, String type) {
+        this.nodeId = nodeId;
+        this.userId = userId;
+        this.type = type;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isReload() {
+        return userId == null;
+    }
+}
@@ -0,0 +1,49 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * User Changed Event
+ * Published by the UserService whenever a user is written, so that components
+ * holding derived state (e.g., caches) can react without the UserService
+ * having to know about them.
+ */
+public class UserChangedEvent {
+
+    public enum Type {
+        CREATED, STATUS_CHANGED, PROFILE_UPDATED
+    }
+
+    private final Type type;
+    private final User user;
+
+    // status before a STATUS_CHANGED, null for the other types
+    private final UserStatus previousStatus;
+
+    public UserChangedEvent(Type type, User user) {
+        this(type, user, null);
+    }
+
+    public UserChangedEvent(Type type, User user, UserStatus previousStatus) {
+        this.type = type;
+        this.user = user;
+        this.previousStatus = previousStatus;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public UserStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public Long getUserId() {
+        return user.getId();
+    }
+}
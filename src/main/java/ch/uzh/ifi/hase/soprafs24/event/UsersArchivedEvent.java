@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import java.util.List;
+
+/**
+ * Users Archived Event
+ * Published by the UserArchive after a batch of users has been moved from the
+ * USER table into USER_ARCHIVE. The users themselves have not changed: their
+ * usernames stay taken and they still count as registered users, only
+ * listings of the USER table (e.g., the cached user list) are affected.
+ */
+public class UsersArchivedEvent {
+
+    private final List<Long> userIds;
+
+    public UsersArchivedEvent(List<Long> userIds) {
+        this.userIds = userIds;
+    }
+
+    public List<Long> getUserIds() {
+        return userIds;
+    }
+}
@@ -0,0 +1,20 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+/**
+ * Users Reloaded Event
+ * Published after users have been written in bulk, bypassing the UserService
+ * (e.g., when a snapshot is restored). Components holding derived state have
+ * to rebuild it completely.
+ */
+public class UsersReloadedEvent {
+
+    private final long count;
+
+    public UsersReloadedEvent(long count) {
+        this.count = count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
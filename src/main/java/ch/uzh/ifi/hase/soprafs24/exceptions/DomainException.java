@@ -0,0 +1,26 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Domain Exception
+ * Expected failures of the user domain (unknown user, wrong password,
+ * conflicting registration), turned into error responses by
+ * GlobalExceptionAdvice.
+ * They happen all the time and say everything in their status and message, so
+ * they have no stack trace and no suppressed exceptions. This makes them
+ * immutable, the common ones are preallocated constants.
+ */
+public abstract class DomainException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    protected DomainException(HttpStatus status, String message) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
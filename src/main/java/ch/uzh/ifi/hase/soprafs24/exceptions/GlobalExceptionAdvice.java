@@ -1,5 +1,6 @@
 package ch.uzh.ifi.hase.soprafs24.exceptions;
 
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ErrorDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -27,6 +28,17 @@ public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
     return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
   }
 
+  @ExceptionHandler(DomainException.class)
+  public ResponseEntity<ErrorDTO> handleDomainException(DomainException ex, HttpServletRequest request) {
+    // expected outcomes, not worth a log line
+    return errorResponse(ex.getStatus(), ex.getMessage(), new HttpHeaders(), request);
+  }
+
+  @ExceptionHandler(ResponseStatusException.class)
+  public ResponseEntity<ErrorDTO> handleResponseStatusException(ResponseStatusException ex, HttpServletRequest request) {
+    return errorResponse(ex.getStatus(), ex.getReason(), ex.getResponseHeaders(), request);
+  }
+
   @ExceptionHandler(TransactionSystemException.class)
   public ResponseStatusException handleTransactionSystemException(Exception ex, HttpServletRequest request) {
     log.error("Request: {} raised {}", request.getRequestURL(), ex);
@@ -40,4 +52,15 @@ public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
     log.error("Default Exception Handler -> caught:", ex);
     return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex);
   }
-}
\ No newline at end of file
+
+  private static ResponseEntity<ErrorDTO> errorResponse(HttpStatus status, String message, HttpHeaders headers,
+                                                        HttpServletRequest request) {
+    ErrorDTO error = new ErrorDTO();
+    error.setTimestamp(System.currentTimeMillis());
+    error.setStatus(status.value());
+    error.setError(status.getReasonPhrase());
+    error.setMessage(message);
+    error.setPath(request.getRequestURI());
+    return ResponseEntity.status(status).headers(headers).body(error);
+  }
+}
@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Invalid Credentials Exception
+ * The user exists but the password does not match (401).
+ */
+public class InvalidCredentialsException extends DomainException {
+
+    public static final InvalidCredentialsException WRONG_PASSWORD = new InvalidCredentialsException("Wrong password");
+
+    public InvalidCredentialsException(String message) {
+        super(HttpStatus.UNAUTHORIZED, message);
+    }
+}
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * User Already Exists Exception
+ * A registration conflicts with an existing user (409).
+ */
+public class UserAlreadyExistsException extends DomainException {
+
+    private static final String BASE_ERROR_MESSAGE = "The %s provided %s not unique. Therefore, the user could not be created!";
+
+    public static final UserAlreadyExistsException USERNAME_AND_NAME_TAKEN =
+            new UserAlreadyExistsException(String.format(BASE_ERROR_MESSAGE, "username and the name", "are"));
+
+    public static final UserAlreadyExistsException USERNAME_TAKEN =
+            new UserAlreadyExistsException(String.format(BASE_ERROR_MESSAGE, "username", "is"));
+
+    public static final UserAlreadyExistsException NAME_TAKEN =
+            new UserAlreadyExistsException(String.format(BASE_ERROR_MESSAGE, "name", "is"));
+
+    public UserAlreadyExistsException(String message) {
+        super(HttpStatus.CONFLICT, message);
+    }
+}
@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * User Not Found Exception
+ * No user with the requested id, username or token (404).
+ */
+public class UserNotFoundException extends DomainException {
+
+    public static final UserNotFoundException USER_NOT_FOUND = new UserNotFoundException("User not found");
+
+    public UserNotFoundException(String message) {
+        super(HttpStatus.NOT_FOUND, message);
+    }
+}
@@ -0,0 +1,141 @@
+package ch.uzh.ifi.hase.soprafs24.filter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive Concurrency Limiter
+ * Limits the number of requests that are processed at the same time. The limit
+ * is not fixed but adapts to the observed latency (AIMD), decided once per
+ * sampling window (at least MIN_WINDOW_SAMPLES requests and MIN_WINDOW_NANOS or
+ * two baseline latencies, whichever is longer):
+ * - the average latency of the window is compared with the baseline, a slow
+ * moving average over the previous windows, so a bulkhead mixing fast and slow
+ * requests (e.g. unknown usernames and bcrypt logins) is judged by its usual mix
+ * - if the window average exceeds baseline * tolerance, or more than
+ * MAX_FAILURE_RATIO of its requests failed, the limit is multiplied by the
+ * backoff ratio, once for the whole window
+ * - otherwise, if the limit has actually been used, it grows by one
+ * Requests above the limit are not queued but rejected right away.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    static final int MIN_WINDOW_SAMPLES = 10;
+    static final long MIN_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // how fast the baseline follows the window latencies
+    private static final double BASELINE_SMOOTHING = 0.1;
+
+    // single failures are noise, a failing share of the requests is overload
+    private static final double MAX_FAILURE_RATIO = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    // guarded by this
+    private double baselineNanos;
+    private long windowStart;
+    private int windowSamples;
+    private long windowLatencyNanos;
+    private int windowFailures;
+    private int windowMaxInFlight;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, double tolerance) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, tolerance, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance,
+                               LongSupplier clock) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("The backoff ratio must be in (0, 1)");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.clock = clock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * @return true if the caller may proceed, in which case it has to call
+     * release() once it is done; false if the request should be shed
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a permit and feeds the measured latency back into the limit.
+     *
+     * @param latencyNanos time the request took
+     * @param failed       whether the request failed, which counts as an overload signal
+     */
+    public void release(long latencyNanos, boolean failed) {
+        int inFlightBefore = inFlight.getAndDecrement();
+
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (windowSamples == 0) {
+                windowStart = now;
+            }
+            windowSamples++;
+            windowLatencyNanos += latencyNanos;
+            if (failed) {
+                windowFailures++;
+            }
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlightBefore);
+
+            long windowNanos = Math.max(MIN_WINDOW_NANOS, (long) (2 * baselineNanos));
+            if (windowSamples < MIN_WINDOW_SAMPLES || now - windowStart < windowNanos) {
+                return;
+            }
+
+            double averageNanos = (double) windowLatencyNanos / windowSamples;
+            boolean overloaded = windowFailures > windowSamples * MAX_FAILURE_RATIO
+                    || (baselineNanos > 0 && averageNanos > baselineNanos * tolerance);
+            if (overloaded) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            }
+            else if (windowMaxInFlight * 2 >= limit) {
+                // only grow if the current limit is actually being used
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            baselineNanos = baselineNanos == 0 ? averageNanos
+                    : baselineNanos + (averageNanos - baselineNanos) * BASELINE_SMOOTHING;
+
+            windowSamples = 0;
+            windowLatencyNanos = 0;
+            windowFailures = 0;
+            windowMaxInFlight = 0;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,56 @@
+package ch.uzh.ifi.hase.soprafs24.filter;
+
+/**
+ * Bulkhead
+ * The endpoints of the UserController are split into separate compartments so
+ * that an overloaded compartment (e.g., someone polling GET /users in a loop)
+ * cannot use up the threads and connections needed by the others.
+ * Each bulkhead carries the default initial and maximum concurrency limit,
+ * which can be overridden with limits.<name>.initial / limits.<name>.max.
+ */
+public enum Bulkhead {
+    LIST(4, 16),
+    READ(20, 100),
+    WRITE(10, 50),
+    AUTH(20, 100);
+
+    private final int defaultInitialLimit;
+    private final int defaultMaxLimit;
+
+    Bulkhead(int defaultInitialLimit, int defaultMaxLimit) {
+        this.defaultInitialLimit = defaultInitialLimit;
+        this.defaultMaxLimit = defaultMaxLimit;
+    }
+
+    public int getDefaultInitialLimit() {
+        return defaultInitialLimit;
+    }
+
+    public int getDefaultMaxLimit() {
+        return defaultMaxLimit;
+    }
+
+    public String propertyKey() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Maps a request onto its bulkhead.
+     *
+     * @param method HTTP method of the request
+     * @param path   request path without the context path
+     * @return the bulkhead or null if the request is not handled by the UserController
+     */
+    public static Bulkhead classify(String method, String path) {
+        if (path == null || !(path.equals("/users") || path.startsWith("/users/"))) {
+            return null;
+        }
+        if (path.equals("/users/login") || path.equals("/users/logout")) {
+            return AUTH;
+        }
+        if ("GET".equals(method)) {
+            return path.equals("/users") ? LIST : READ;
+        }
+        return WRITE;
+    }
+}
@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs24.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Concurrency Limit Filter
+ * Every request to the UserController has to get a permit from the limiter of
+ * its bulkhead (list, read, write, auth) before it is processed. If there is
+ * no permit left, the request is shed immediately with 503 instead of waiting
+ * for a Tomcat thread or a database connection.
+ * This keeps e.g. the login latency stable while GET /users is hammered.
+ */
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final Logger log = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    private final boolean enabled;
+    private final Map<Bulkhead, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(Bulkhead.class);
+
+    public ConcurrencyLimitFilter(Environment environment) {
+        this.enabled = environment.getProperty("limits.enabled", Boolean.class, true);
+        int minLimit = environment.getProperty("limits.min", Integer.class, 1);
+        double backoffRatio = environment.getProperty("limits.backoff-ratio", Double.class, 0.9);
+        double tolerance = environment.getProperty("limits.tolerance", Double.class, 2.0);
+
+        for (Bulkhead bulkhead : Bulkhead.values()) {
+            String prefix = "limits." + bulkhead.propertyKey();
+            int initialLimit = environment.getProperty(prefix + ".initial", Integer.class,
+                    bulkhead.getDefaultInitialLimit());
+            int maxLimit = environment.getProperty(prefix + ".max", Integer.class,
+                    bulkhead.getDefaultMaxLimit());
+            limiters.put(bulkhead,
+                    new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, tolerance));
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter(Bulkhead bulkhead) {
+        return limiters.get(bulkhead);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || classify(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Bulkhead bulkhead = classify(request);
+        AdaptiveConcurrencyLimiter limiter = limiters.get(bulkhead);
+
+        if (!limiter.tryAcquire()) {
+            log.debug("Shed {} {} (bulkhead {} at limit {})", request.getMethod(), request.getRequestURI(),
+                    bulkhead, limiter.getLimit());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many concurrent requests");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        }
+        finally {
+            limiter.release(System.nanoTime() - start, failed);
+        }
+    }
+
+    private Bulkhead classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Bulkhead bulkhead = Bulkhead.classify(request.getMethod(), path);
+        // lookups of given ids (GET /users?ids=...) are bounded, unlike the full list
+        if (bulkhead == Bulkhead.LIST && request.getParameter("ids") != null) {
+            return Bulkhead.READ;
+        }
+        return bulkhead;
+    }
+}
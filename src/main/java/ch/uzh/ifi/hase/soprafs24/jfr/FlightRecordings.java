@@ -0,0 +1,122 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flight Recordings
+ * Starts, dumps and stops the JDK Flight Recorder recording behind the
+ * /admin/jfr endpoints. The recording uses the JDK's default settings plus the
+ * bundled jfr/soprafs24.jfc, which enables the UserEndpointEvents and
+ * UserOperationEvents. It keeps the last jfr.max-age-minutes in a ring on
+ * disk; dumps are written to jfr.directory and can be opened in JDK Mission
+ * Control or with the jfr tool.
+ * Only one recording runs at a time.
+ */
+@Component
+public class FlightRecordings {
+
+    static final String RECORDING_NAME = "soprafs24-users";
+    private static final String SETTINGS = "jfr/soprafs24.jfc";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Logger log = LoggerFactory.getLogger(FlightRecordings.class);
+
+    private final Path directory;
+    private final Duration maxAge;
+
+    // guarded by this
+    private Recording recording;
+
+    public FlightRecordings(@Value("${jfr.directory:${java.io.tmpdir}/soprafs24/jfr}") String directory,
+                            @Value("${jfr.max-age-minutes:30}") long maxAgeMinutes) {
+        this.directory = Paths.get(directory);
+        this.maxAge = Duration.ofMinutes(maxAgeMinutes);
+    }
+
+    /**
+     * @return false if the recording is running already
+     */
+    public synchronized boolean start() throws IOException, ParseException {
+        if (recording != null) {
+            return false;
+        }
+        Recording started = new Recording(settings());
+        started.setName(RECORDING_NAME);
+        started.setToDisk(true);
+        started.setMaxAge(maxAge);
+        started.start();
+        recording = started;
+        log.info("Started flight recording {}, keeping the last {}", RECORDING_NAME, maxAge);
+        return true;
+    }
+
+    public synchronized boolean isRunning() {
+        return recording != null;
+    }
+
+    /**
+     * Writes what the running recording holds so far into a new file, the
+     * recording goes on.
+     *
+     * @return the file, null if no recording is running
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null) {
+            return null;
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve(RECORDING_NAME + "-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+        recording.dump(file);
+        log.info("Dumped flight recording {} to {}", RECORDING_NAME, file);
+        return file;
+    }
+
+    /**
+     * Dumps the recording one last time and stops it.
+     *
+     * @return the file of the final dump, null if no recording is running
+     */
+    public synchronized Path stop() throws IOException {
+        Path file = dump();
+        close();
+        return file;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private static Map<String, String> settings() throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (Reader reader = new InputStreamReader(new ClassPathResource(SETTINGS).getInputStream(),
+                StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(reader).getSettings());
+        }
+        return settings;
+    }
+}
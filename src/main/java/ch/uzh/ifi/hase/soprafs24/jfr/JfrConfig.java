@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * JFR Configuration
+ * Hooks the custom Flight Recorder events into the request path: the
+ * UserEndpointInterceptor around the /users endpoints and the
+ * UserOperationInterceptor around the UserService. The JDBC time comes from
+ * the SqlTimingSessionListener.
+ * The events cost next to nothing unless a recording enables them, see
+ * FlightRecordings.
+ */
+@Configuration
+public class JfrConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new UserEndpointInterceptor()).addPathPatterns("/users", "/users/**");
+    }
+
+    @Bean
+    public static BeanPostProcessor userOperationEventPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // the transactional proxy of the UserService, not e.g. a mock of it in a test
+                if (bean instanceof UserService && bean instanceof Advised && !((Advised) bean).isFrozen()) {
+                    // in front of the transaction interceptor, so the commit is measured as well
+                    ((Advised) bean).addAdvice(0, new UserOperationInterceptor());
+                }
+                return bean;
+            }
+        };
+    }
+}
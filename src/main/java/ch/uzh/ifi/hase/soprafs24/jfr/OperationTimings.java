@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+/**
+ * Operation Timings
+ * Per-thread running totals the events are computed from: an event remembers
+ * the totals when it begins and records the difference when it ends, so nested
+ * events (an endpoint calling several service operations) need no bookkeeping.
+ * Only plain long additions on the request thread, cheap enough to run whether
+ * a recording is active or not.
+ */
+final class OperationTimings {
+
+    private static final ThreadLocal<OperationTimings> CURRENT = ThreadLocal.withInitial(OperationTimings::new);
+
+    long sqlNanos;
+    long serviceNanos;
+
+    // user of the last service operation on this thread, 0 if unknown
+    long lastUserId;
+
+    private OperationTimings() {
+    }
+
+    static OperationTimings current() {
+        return CURRENT.get();
+    }
+}
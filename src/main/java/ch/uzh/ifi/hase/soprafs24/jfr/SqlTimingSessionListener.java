@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * SQL Timing Session Listener
+ * Adds the execution time of every JDBC statement of a Hibernate session to
+ * the OperationTimings of the current thread. Hibernate creates one instance
+ * per session, see hibernate.session.events.auto in application.properties.
+ * Statements issued through the JdbcTemplate (snapshots, archive, change
+ * sequence) are not covered.
+ */
+public class SqlTimingSessionListener extends BaseSessionEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private long statementStart;
+    private long batchStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        OperationTimings.current().sqlNanos += System.nanoTime() - statementStart;
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        OperationTimings.current().sqlNanos += System.nanoTime() - batchStart;
+    }
+}
@@ -0,0 +1,50 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * User Endpoint Event
+ * One request to the UserController, recorded by UserEndpointInterceptor.
+ * The duration covers the handler including the serialization of the response.
+ */
+@Name("soprafs24.UserEndpoint")
+@Label("User Endpoint")
+@Category({"SoPra", "Users"})
+@Description("Request to a /users endpoint")
+public class UserEndpointEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    @Description("Path pattern of the handler, e.g. /users/{id}")
+    String endpoint;
+
+    @Label("Status")
+    @Description("HTTP status of the response")
+    int status;
+
+    @Label("User Id")
+    @Description("Id of the user the request was about, 0 if none")
+    long userId;
+
+    @Label("SQL Time")
+    @Description("Time spent executing JDBC statements")
+    @Timespan(Timespan.NANOSECONDS)
+    long sqlTime;
+
+    @Label("Service Time")
+    @Description("Time spent in the UserService, including its SQL time")
+    @Timespan(Timespan.NANOSECONDS)
+    long serviceTime;
+
+    @Label("Mapping Time")
+    @Description("Time spent outside the UserService: DTO mapping, caches and serialization of the response")
+    @Timespan(Timespan.NANOSECONDS)
+    long mappingTime;
+}
@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * User Endpoint Interceptor
+ * Records a UserEndpointEvent for every request to the UserController, from
+ * before the handler runs until the response has been written. Without an
+ * active recording that enables the event, nothing is done.
+ */
+public class UserEndpointInterceptor implements HandlerInterceptor {
+
+    private static final String EVENT_ATTRIBUTE = UserEndpointInterceptor.class.getName() + ".event";
+    private static final String TIMINGS_ATTRIBUTE = UserEndpointInterceptor.class.getName() + ".timings";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        UserEndpointEvent event = new UserEndpointEvent();
+        if (!event.isEnabled()) {
+            return true;
+        }
+        OperationTimings timings = OperationTimings.current();
+        timings.lastUserId = 0;
+        request.setAttribute(EVENT_ATTRIBUTE, event);
+        // totals at the start, the event gets the difference
+        request.setAttribute(TIMINGS_ATTRIBUTE, new long[]{timings.sqlNanos, timings.serviceNanos, System.nanoTime()});
+        event.begin();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        UserEndpointEvent event = (UserEndpointEvent) request.getAttribute(EVENT_ATTRIBUTE);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        OperationTimings timings = OperationTimings.current();
+        long[] start = (long[]) request.getAttribute(TIMINGS_ATTRIBUTE);
+        event.method = request.getMethod();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        event.endpoint = pattern != null ? pattern.toString() : request.getRequestURI();
+        event.status = response.getStatus();
+        event.userId = userId(request, timings);
+        event.sqlTime = timings.sqlNanos - start[0];
+        event.serviceTime = timings.serviceNanos - start[1];
+        event.mappingTime = Math.max(0, System.nanoTime() - start[2] - event.serviceTime);
+        event.commit();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long userId(HttpServletRequest request, OperationTimings timings) {
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables != null && variables.containsKey("id")) {
+            try {
+                return Long.parseLong(variables.get("id"));
+            }
+            catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        // e.g. registration and login, the user only becomes known in the service
+        return timings.lastUserId;
+    }
+}
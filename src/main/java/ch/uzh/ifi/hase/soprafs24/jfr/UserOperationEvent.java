@@ -0,0 +1,37 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * User Operation Event
+ * One call of a UserService method, recorded by UserOperationInterceptor.
+ * The duration includes the commit of the transaction.
+ */
+@Name("soprafs24.UserOperation")
+@Label("User Operation")
+@Category({"SoPra", "Users"})
+@Description("Call of a UserService operation")
+public class UserOperationEvent extends Event {
+
+    @Label("Operation")
+    @Description("registration, login, logout, status, profile.read, profile.update or the method name")
+    String operation;
+
+    @Label("User Id")
+    @Description("Id of the user the operation was about, 0 if none")
+    long userId;
+
+    @Label("Outcome")
+    @Description("OK or the simple name of the thrown exception")
+    String outcome;
+
+    @Label("SQL Time")
+    @Description("Time spent executing JDBC statements")
+    @Timespan(Timespan.NANOSECONDS)
+    long sqlTime;
+}
@@ -0,0 +1,85 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * User Operation Interceptor
+ * Records a UserOperationEvent for every call of a UserService method. It sits
+ * in front of the transaction interceptor (see JfrConfig), so the commit is
+ * part of the operation. Without an active recording that enables the event,
+ * the call goes straight through.
+ */
+public class UserOperationInterceptor implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        UserOperationEvent event = new UserOperationEvent();
+        boolean recording = event.isEnabled();
+        OperationTimings timings = OperationTimings.current();
+        long sqlStart = timings.sqlNanos;
+        long start = System.nanoTime();
+        if (recording) {
+            event.begin();
+        }
+        Object result = null;
+        String outcome = "OK";
+        try {
+            result = invocation.proceed();
+            return result;
+        }
+        catch (Throwable e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        }
+        finally {
+            // the endpoint events need these even if this event is not recorded
+            timings.serviceNanos += System.nanoTime() - start;
+            timings.lastUserId = userId(result, invocation.getArguments());
+            if (recording) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = operation(invocation.getMethod().getName(), invocation.getArguments());
+                    event.userId = timings.lastUserId;
+                    event.outcome = outcome;
+                    event.sqlTime = timings.sqlNanos - sqlStart;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private static String operation(String method, Object[] arguments) {
+        switch (method) {
+            case "createUser":
+                return "registration";
+            case "checkLoginCredentials":
+                return "login";
+            case "updateStatus":
+                return arguments.length > 1 && arguments[1] == UserStatus.OFFLINE ? "logout" : "status";
+            case "getUserById":
+                return "profile.read";
+            case "updateUser":
+                return "profile.update";
+            default:
+                return method;
+        }
+    }
+
+    private static long userId(Object result, Object[] arguments) {
+        if (result instanceof User && ((User) result).getId() != null) {
+            return ((User) result).getId();
+        }
+        if (arguments.length > 0) {
+            if (arguments[0] instanceof Long) {
+                return (Long) arguments[0];
+            }
+            if (arguments[0] instanceof User && ((User) arguments[0]).getId() != null) {
+                return ((User) arguments[0]).getId();
+            }
+        }
+        return 0;
+    }
+}
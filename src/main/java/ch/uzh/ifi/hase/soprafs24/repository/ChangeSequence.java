@@ -0,0 +1,102 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.sharding.ShardDataSources;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Change Sequence
+ * Hands out the change sequence numbers of the user change feed from the
+ * database sequence user_change_seq. When the users are sharded, the sequence
+ * lives on shard 0 only, so the numbers stay increasing across all shards.
+ *
+ * Numbers are drawn before the writing transaction commits, so a change with a
+ * lower number can become visible after one with a higher number. The numbers
+ * of running transactions are therefore tracked, and readers of the feed must
+ * stop below getVisibleBound(); otherwise a client could move its position past
+ * a change that is about to commit. Only the transactions of this instance are
+ * tracked, so with cluster.enabled the bound is not safe and the feed is not
+ * served, see isClustered().
+ */
+@Component
+public class ChangeSequence {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean clustered;
+
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+
+    // drawing a number and registering it as in flight must look atomic to getVisibleBound()
+    private final ReadWriteLock drawLock = new ReentrantReadWriteLock();
+
+    public ChangeSequence(DataSource dataSource, ObjectProvider<ShardDataSources> shardDataSources,
+                          @Value("${cluster.enabled:false}") boolean clustered) {
+        ShardDataSources shards = shardDataSources.getIfAvailable();
+        this.jdbcTemplate = new JdbcTemplate(shards != null ? shards.get(0) : dataSource);
+        this.clustered = clustered;
+    }
+
+    @PostConstruct
+    public void createSequence() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS user_change_seq");
+    }
+
+    public long next() {
+        Long seq;
+        drawLock.readLock().lock();
+        try {
+            seq = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR user_change_seq", Long.class);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                inFlight.add(seq);
+            }
+        }
+        finally {
+            drawLock.readLock().unlock();
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    inFlight.remove(seq);
+                }
+            });
+        }
+        return seq;
+    }
+
+    /**
+     * @return true if other instances draw numbers from the same sequence; their
+     * running transactions are not tracked, so getVisibleBound() does not hold
+     * back their changes and a reader could skip them
+     */
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * @return the lowest change sequence number that may still be committed by
+     * a running transaction of this instance; all changes below are final
+     * unless isClustered()
+     */
+    public long getVisibleBound() {
+        drawLock.writeLock().lock();
+        try {
+            Long lowest = inFlight.ceiling(Long.MIN_VALUE);
+            return lowest != null ? lowest : Long.MAX_VALUE;
+        }
+        finally {
+            drawLock.writeLock().unlock();
+        }
+    }
+}
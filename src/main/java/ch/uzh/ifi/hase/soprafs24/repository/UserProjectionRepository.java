@@ -0,0 +1,21 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads only the selected columns of the users, without loading entities.
+ * Every user is returned as a map from field name to value, in the order of
+ * the given fields. Part of the UserRepository, see UserProjectionRepositoryImpl.
+ */
+public interface UserProjectionRepository {
+
+    // all users, ordered by id
+    List<Map<String, Object>> findAllFields(List<UserField> fields);
+
+    // empty if there is no user with the id; Spring Data would turn a null Map into an empty one
+    Optional<Map<String, Object>> findFieldsById(Long id, List<UserField> fields);
+}
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * User Projection Repository
+ * Criteria tuple queries that select just the requested columns, e.g.
+ * SELECT id, username FROM user. The rows are not managed entities, so there
+ * is no dirty checking and nothing ends up in the persistence context.
+ */
+public class UserProjectionRepositoryImpl implements UserProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findAllFields(List<UserField> fields) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<User> user = query.from(User.class);
+        query.multiselect(selections(user, fields)).orderBy(criteriaBuilder.asc(user.get("id")));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).getResultList()) {
+            rows.add(toMap(tuple, fields));
+        }
+        return rows;
+    }
+
+    @Override
+    public Optional<Map<String, Object>> findFieldsById(Long id, List<UserField> fields) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<User> user = query.from(User.class);
+        query.multiselect(selections(user, fields)).where(criteriaBuilder.equal(user.get("id"), id));
+
+        List<Tuple> tuples = entityManager.createQuery(query).getResultList();
+        return tuples.isEmpty() ? Optional.empty() : Optional.of(toMap(tuples.get(0), fields));
+    }
+
+    private static List<Selection<?>> selections(Root<User> user, List<UserField> fields) {
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (UserField field : fields) {
+            selections.add(user.get(field.getFieldName()).alias(field.getFieldName()));
+        }
+        return selections;
+    }
+
+    private static Map<String, Object> toMap(Tuple tuple, List<UserField> fields) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (UserField field : fields) {
+            row.put(field.getFieldName(), tuple.get(field.getFieldName()));
+        }
+        return row;
+    }
+}
@@ -1,13 +1,29 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository("userRepository")
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserProjectionRepository {
     User findByName(String name);
 
     User findByUsername(String username);
 
+    // change feed: users changed after since and before bound, oldest change first (uses idx_user_change_seq)
+    List<User> findByChangeSeqGreaterThanAndChangeSeqLessThanOrderByChangeSeqAsc(Long since, Long bound,
+                                                                                  Pageable pageable);
+
+    // statistics: [status, count] rows, see UserStatistics
+    @Query("SELECT u.status, COUNT(u) FROM User u GROUP BY u.status")
+    List<Object[]> countByStatus();
+
+    // statistics: [day of creationDate, count] rows
+    @Query("SELECT CAST(u.creationDate AS date), COUNT(u) FROM User u GROUP BY CAST(u.creationDate AS date)")
+    List<Object[]> countRegistrationsPerDay();
+
 }
\ No newline at end of file
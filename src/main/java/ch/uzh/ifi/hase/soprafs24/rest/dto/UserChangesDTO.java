@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserChangesDTO {
+
+    // users created or changed since the requested position, oldest change first
+    private List<UserGetDTO> users = new ArrayList<>();
+
+    // position to pass as since with the next request
+    private long nextSince;
+
+    // true if there are more changes than fit into this response
+    private boolean hasMore;
+
+    public List<UserGetDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserGetDTO> users) {
+        this.users = users;
+    }
+
+    public long getNextSince() {
+        return nextSince;
+    }
+
+    public void setNextSince(long nextSince) {
+        this.nextSince = nextSince;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
@@ -0,0 +1,30 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.util.Date;
+
+/**
+ * Returned on registration and login only: the user plus the token of the new
+ * session. The token must never be part of the other user responses.
+ */
+public class UserLoginDTO extends UserGetDTO {
+
+    private String token;
+
+    private Date tokenExpiresAt;
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public Date getTokenExpiresAt() {
+        return tokenExpiresAt;
+    }
+
+    public void setTokenExpiresAt(Date tokenExpiresAt) {
+        this.tokenExpiresAt = tokenExpiresAt;
+    }
+}
@@ -0,0 +1,29 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserLookupDTO {
+
+    // found users, in the order in which they were requested
+    private List<UserGetDTO> users = new ArrayList<>();
+
+    // requested ids for which no user exists
+    private List<Long> missingIds = new ArrayList<>();
+
+    public List<UserGetDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserGetDTO> users) {
+        this.users = users;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+}
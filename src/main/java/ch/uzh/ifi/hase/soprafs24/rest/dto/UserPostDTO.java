@@ -10,6 +10,7 @@ public class UserPostDTO {
     private String name;
     private String username;
     private UserStatus status;
+    private String password;
 
     // ADDED -->
     private Date creationDate;
@@ -49,6 +50,14 @@ public class UserPostDTO {
         this.status = status;
     }
 
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
     // ADDED -->
     public Date getCreationDate() {
         return creationDate;
@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class UserStatsDTO {
+
+    // number of registered users
+    private long total;
+
+    // number of users per status, every status is listed
+    private Map<String, Long> byStatus = new LinkedHashMap<>();
+
+    // number of registrations per day (yyyy-MM-dd), oldest day first, days without registrations are left out
+    private SortedMap<String, Long> registrationsPerDay = new TreeMap<>();
+
+    // last time the counters were recounted from the database
+    private Date reconciledAt;
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public Map<String, Long> getByStatus() {
+        return byStatus;
+    }
+
+    public void setByStatus(Map<String, Long> byStatus) {
+        this.byStatus = byStatus;
+    }
+
+    public SortedMap<String, Long> getRegistrationsPerDay() {
+        return registrationsPerDay;
+    }
+
+    public void setRegistrationsPerDay(SortedMap<String, Long> registrationsPerDay) {
+        this.registrationsPerDay = registrationsPerDay;
+    }
+
+    public Date getReconciledAt() {
+        return reconciledAt;
+    }
+
+    public void setReconciledAt(Date reconciledAt) {
+        this.reconciledAt = reconciledAt;
+    }
+}
@@ -2,6 +2,7 @@ package ch.uzh.ifi.hase.soprafs24.rest.mapper;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserLoginDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
 import org.mapstruct.*;
@@ -29,6 +30,7 @@ public interface DTOMapper {
     @Mapping(source = "status", target = "status")
     @Mapping(source = "creationDate", target = "creationDate")  // ADDED
     @Mapping(source = "birthDate", target = "birthDate")  // ADDED
+    @Mapping(source = "password", target = "password")
     User convertUserPostDTOtoEntity(UserPostDTO userPostDTO);
     // Send user info as DTO from frontend to backend and stores it as database entity
 
@@ -41,6 +43,17 @@ public interface DTOMapper {
     UserGetDTO convertEntityToUserGetDTO(User user);
     // Retrieves info from database entity and sends it to the frontend as DTO
 
+    @Mapping(source = "id", target = "id")
+    @Mapping(source = "name", target = "name")
+    @Mapping(source = "username", target = "username")
+    @Mapping(source = "status", target = "status")
+    @Mapping(source = "creationDate", target = "creationDate")
+    @Mapping(source = "birthDate", target = "birthDate")
+    @Mapping(source = "token", target = "token")
+    @Mapping(source = "tokenExpiresAt", target = "tokenExpiresAt")
+    UserLoginDTO convertEntityToUserLoginDTO(User user);
+    // Same as above plus the session token, only for the user who just registered or logged in
+
     @Mapping(source = "id", target = "id")
     @Mapping(source = "name", target = "name")
     @Mapping(source = "username", target = "username")
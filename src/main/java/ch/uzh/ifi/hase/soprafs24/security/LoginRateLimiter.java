@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Login Rate Limiter
+ * Throttles login attempts per username and per client IP address before the
+ * credentials are checked, so a credential-stuffing burst is rejected in
+ * memory instead of turning into one database lookup per attempt.
+ * The rejections are exported as the metric login.throttle.rejections.
+ */
+@Component
+public class LoginRateLimiter implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(LoginRateLimiter.class);
+
+    private final StripedTokenBucketLimiter usernameLimiter;
+    private final StripedTokenBucketLimiter ipLimiter;
+
+    private final LongAdder usernameRejections = new LongAdder();
+    private final LongAdder ipRejections = new LongAdder();
+
+    public LoginRateLimiter(@Value("${login.throttle.stripes:16}") int stripes,
+                            @Value("${login.throttle.username.burst:5}") int usernameBurst,
+                            @Value("${login.throttle.username.per-minute:10}") int usernamePerMinute,
+                            @Value("${login.throttle.ip.burst:20}") int ipBurst,
+                            @Value("${login.throttle.ip.per-minute:60}") int ipPerMinute,
+                            @Value("${login.throttle.max-keys:100000}") int maxKeys) {
+        this.usernameLimiter = new StripedTokenBucketLimiter(stripes, usernameBurst, usernamePerMinute, maxKeys);
+        this.ipLimiter = new StripedTokenBucketLimiter(stripes, ipBurst, ipPerMinute, maxKeys);
+    }
+
+    /**
+     * Consumes a login attempt for the given username and client.
+     *
+     * @throws ResponseStatusException 429 if either of them is over its rate
+     */
+    public void checkLoginAttempt(String username, String clientIp) {
+        if (!ipLimiter.tryAcquire(String.valueOf(clientIp))) {
+            ipRejections.increment();
+            log.debug("Throttled login attempt from {}", clientIp);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many login attempts");
+        }
+        if (!usernameLimiter.tryAcquire(String.valueOf(username))) {
+            usernameRejections.increment();
+            log.debug("Throttled login attempt for {}", username);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many login attempts");
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("login.throttle.rejections", usernameRejections, LongAdder::sum)
+                .tag("key", "username")
+                .description("Login attempts rejected because of the username rate")
+                .register(registry);
+        FunctionCounter.builder("login.throttle.rejections", ipRejections, LongAdder::sum)
+                .tag("key", "ip")
+                .description("Login attempts rejected because of the client IP rate")
+                .register(registry);
+        Gauge.builder("login.throttle.buckets", usernameLimiter, StripedTokenBucketLimiter::size)
+                .tag("key", "username")
+                .register(registry);
+        Gauge.builder("login.throttle.buckets", ipLimiter, StripedTokenBucketLimiter::size)
+                .tag("key", "ip")
+                .register(registry);
+    }
+}
@@ -0,0 +1,132 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Password Hasher
+ * Hashes and verifies passwords with bcrypt. Since bcrypt is deliberately
+ * expensive, the work runs on a dedicated, bounded pool instead of on the
+ * request threads: at most password.hashing.threads hashes are computed at
+ * the same time and at most password.hashing.queue are waiting. Anything
+ * beyond that is rejected with 503 instead of piling up.
+ */
+@Component
+public class PasswordHasher implements MeterBinder {
+
+    private final int strength;
+    private final long timeoutMillis;
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+
+    public PasswordHasher(@Value("${password.hashing.strength:10}") int strength,
+                          @Value("${password.hashing.threads:0}") int threads,
+                          @Value("${password.hashing.queue:64}") int queueCapacity,
+                          @Value("${password.hashing.timeout-ms:5000}") long timeoutMillis) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.strength = strength;
+        this.timeoutMillis = timeoutMillis;
+        this.encoder = new BCryptPasswordEncoder(strength);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String hash(String rawPassword) {
+        return execute(() -> encoder.encode(rawPassword));
+    }
+
+    public boolean matches(String rawPassword, String passwordHash) {
+        if (rawPassword == null || passwordHash == null) {
+            return false;
+        }
+        return execute(() -> encoder.matches(rawPassword, passwordHash));
+    }
+
+    /**
+     * @return true if the hash was created with a different work factor than
+     * the configured one, i.e., it should be replaced on the next successful login
+     */
+    public boolean needsRehash(String passwordHash) {
+        // bcrypt hashes look like $2a$10$..., where 10 is the work factor
+        if (passwordHash == null || passwordHash.length() < 7 || passwordHash.charAt(6) != '$') {
+            return true;
+        }
+        try {
+            return Integer.parseInt(passwordHash.substring(4, 6)) != strength;
+        }
+        catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        }
+        catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent password checks");
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Password check timed out");
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Password check interrupted");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes currently being computed")
+                .register(registry);
+        Gauge.builder("password.hashing.queued", executor, e -> e.getQueue().size())
+                .description("Password hashes waiting for a hashing thread")
+                .register(registry);
+    }
+}
@@ -0,0 +1,145 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Striped Token Bucket Limiter
+ * Keeps one token bucket per key (e.g., a username or an IP address). The
+ * buckets are spread over a fixed number of stripes that are locked
+ * independently, so concurrent attempts for different keys rarely contend.
+ * Memory is bounded in two ways:
+ * - buckets that have been idle long enough to be full again are dropped,
+ * since a fresh bucket behaves the same
+ * - every stripe holds at most maxKeysPerStripe buckets (least recently used
+ * buckets are dropped first)
+ */
+public class StripedTokenBucketLimiter {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long idleNanos;
+    private final int maxKeysPerStripe;
+    private final LongSupplier clock;
+
+    /**
+     * @param stripes          number of stripes, rounded up to a power of two
+     * @param capacity         maximum burst per key
+     * @param refillPerMinute  tokens added per key and minute
+     * @param maxKeys          upper bound for the number of tracked keys
+     * @param clock            nano time source
+     */
+    public StripedTokenBucketLimiter(int stripes, int capacity, int refillPerMinute, int maxKeys, LongSupplier clock) {
+        if (capacity < 1 || refillPerMinute < 1) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = stripeCount - 1;
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerMinute / 60_000_000_000.0;
+        this.idleNanos = (long) Math.ceil(capacity / tokensPerNano);
+        this.maxKeysPerStripe = Math.max(1, maxKeys / stripeCount);
+        this.clock = clock;
+    }
+
+    public StripedTokenBucketLimiter(int stripes, int capacity, int refillPerMinute, int maxKeys) {
+        this(stripes, capacity, refillPerMinute, maxKeys, System::nanoTime);
+    }
+
+    /**
+     * Takes one token from the bucket of the given key.
+     *
+     * @return true if a token was available, false if the key is over its rate
+     */
+    public boolean tryAcquire(String key) {
+        Stripe stripe = stripes[spread(key.hashCode()) & mask];
+        long now = clock.getAsLong();
+
+        synchronized (stripe) {
+            stripe.evictIdle(now);
+
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(capacity, now);
+                stripe.buckets.put(key, bucket);
+            }
+            else {
+                bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.lastRefill) * tokensPerNano);
+                bucket.lastRefill = now;
+            }
+
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Drops the idle buckets of all stripes. tryAcquire() only cleans up the
+     * stripe it touches, so stripes without traffic keep their buckets until
+     * this is called.
+     */
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.evictIdle(now);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.buckets.size();
+            }
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+
+    private final class Stripe {
+        // access ordered, so the eldest entries are the least recently used ones
+        private final LinkedHashMap<String, Bucket> buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                return size() > maxKeysPerStripe;
+            }
+        };
+
+        private void evictIdle(long now) {
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().lastRefill < idleNanos) {
+                    // everything after this entry has been used more recently
+                    return;
+                }
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token Service
+ * Issues the session tokens of the users: 24 random bytes (192 bits) in
+ * URL-safe base64 without padding, i.e. 32 characters.
+ * UUID.randomUUID() draws from one shared SecureRandom, so concurrent
+ * registrations queue up on its lock. Here every thread has its own DRBG
+ * instance instead, seeded once from the system entropy source.
+ * Every token gets an expiry date token.ttl-minutes ahead (now on logout) and
+ * is replaced on every login. The expiry date is metadata for the client only:
+ * no endpoint takes a token, so none is checked on the server.
+ */
+@Component
+public class TokenService {
+
+    // 24 bytes encode to 32 base64 characters without padding
+    static final int TOKEN_BYTES = 24;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(TokenService::newSecureRandom);
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    @Autowired
+    public TokenService(@Value("${token.ttl-minutes:1440}") long ttlMinutes) {
+        this(TimeUnit.MINUTES.toMillis(ttlMinutes), System::currentTimeMillis);
+    }
+
+    TokenService(long ttlMillis, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    public String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.get().nextBytes(bytes);
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * Gives the user a fresh token, which replaces (and thereby revokes) the
+     * previous one.
+     */
+    public void issue(User user) {
+        user.setToken(newToken());
+        user.setTokenExpiresAt(new Date(clock.getAsLong() + ttlMillis));
+    }
+
+    /**
+     * Sets the expiry date of the current token of the user to now, e.g. on logout.
+     */
+    public void expire(User user) {
+        user.setTokenExpiresAt(new Date(clock.getAsLong()));
+    }
+
+    private static SecureRandom newSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        }
+        catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserAlreadyExistsException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registration Reservations
+ * The usernames and names of the registrations currently running on this
+ * instance. A registration first reserves its username and name; a concurrent
+ * registration of the same username or name fails right away with 409 instead
+ * of also passing the existence check and then failing on the unique
+ * constraint. Registrations of different users do not wait for each other,
+ * the reservations are single putIfAbsent calls on a ConcurrentHashMap.
+ * A reservation is held until the transaction of the registration has
+ * completed, i.e. until the user is visible to the existence check of others.
+ */
+class RegistrationReservations {
+
+    private final ConcurrentMap<String, Boolean> reserved = new ConcurrentHashMap<>();
+
+    /**
+     * @throws UserAlreadyExistsException if another registration holds the username or the name
+     */
+    Reservation reserve(String username, String name) {
+        String usernameKey = "username:" + username;
+        String nameKey = "name:" + name;
+        if (reserved.putIfAbsent(usernameKey, Boolean.TRUE) != null) {
+            throw UserAlreadyExistsException.USERNAME_TAKEN;
+        }
+        if (reserved.putIfAbsent(nameKey, Boolean.TRUE) != null) {
+            reserved.remove(usernameKey);
+            throw UserAlreadyExistsException.NAME_TAKEN;
+        }
+        return new Reservation(usernameKey, nameKey);
+    }
+
+    /**
+     * Releases the reservation once the current transaction has completed,
+     * right away if there is none.
+     */
+    void releaseAfterTransaction(Reservation reservation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            release(reservation);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                release(reservation);
+            }
+        });
+    }
+
+    int size() {
+        return reserved.size();
+    }
+
+    private void release(Reservation reservation) {
+        reserved.remove(reservation.usernameKey);
+        reserved.remove(reservation.nameKey);
+    }
+
+    static final class Reservation {
+
+        private final String usernameKey;
+        private final String nameKey;
+
+        private Reservation(String usernameKey, String nameKey) {
+            this.usernameKey = usernameKey;
+            this.nameKey = nameKey;
+        }
+    }
+}
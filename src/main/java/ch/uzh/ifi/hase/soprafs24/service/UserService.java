@@ -1,20 +1,43 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.directory.UserDirectory;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserAlreadyExistsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.repository.ChangeSequence;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenService;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * User Service
@@ -22,6 +45,24 @@ import java.util.UUID;
  * the user
  * (e.g., it creates, modifies, deletes, finds). The result will be passed back
  * to the caller.
+ * Pure reads run in read-only transactions: Hibernate then uses FlushMode.MANUAL
+ * (no dirty checking and no flush on commit) and, with
+ * datasource.routing.enabled, they are served by the replica pool.
+ * Users that have been offline for a long time live in the UserArchive: reads
+ * by id and the uniqueness checks fall back to it, and logins and updates move
+ * the user back into the USER table first.
+ * Lookups by username first ask the UserDirectory, a username it does not know
+ * is not looked up in the database (nor in the archive).
+ * Registration and login hash or verify the password with bcrypt, which takes
+ * tens of milliseconds. They run the database work in two short transactions
+ * and the bcrypt work in between, so no pooled connection is held meanwhile
+ * (unless the caller has a transaction of its own, which they then join).
+ * With sharding.enabled, a transaction stays on the shard of its first user.
+ * Every method here only writes a single user, but a caller that wraps several
+ * of them in a transaction of its own can only change users of that one shard:
+ * writing a user of another shard throws an IllegalTransactionStateException
+ * (and rolls the caller's transaction back). Reads of other shards are allowed
+ * but only see committed data, see ShardingRepositoryInterceptor.
  */
 @Service
 @Transactional
@@ -29,30 +70,199 @@ public class UserService {
 
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
+    // ids per IN query of getUsersByIds, keeps the SQL bounded for long id lists
+    static final int LOOKUP_CHUNK_SIZE = 500;
+
+    // maximum number of ids per bulk lookup
+    static final int MAX_LOOKUP_IDS = 5000;
+
+    // maximum number of users per page of the change feed
+    static final int MAX_CHANGES = 1000;
+
     private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final TokenService tokenService;
+    private final ChangeSequence changeSequence;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserArchive userArchive;
+    private final UserDirectory userDirectory;
+    private final TransactionTemplate transactionTemplate;
+    private final RegistrationReservations registrationReservations = new RegistrationReservations();
 
     @Autowired
-    public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+    public UserService(@Qualifier("userRepository") UserRepository userRepository, PasswordHasher passwordHasher,
+                       TokenService tokenService, ChangeSequence changeSequence,
+                       ApplicationEventPublisher eventPublisher, UserArchive userArchive,
+                       UserDirectory userDirectory, PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.tokenService = tokenService;
+        this.changeSequence = changeSequence;
+        this.eventPublisher = eventPublisher;
+        this.userArchive = userArchive;
+        this.userDirectory = userDirectory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    @Transactional(readOnly = true)
     public List<User> getUsers() {
         return this.userRepository.findAll();
     }
 
+    /**
+     * Sparse variant of getUsers(): only the given fields are read from the
+     * database, see UserProjectionRepository.
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getUsers(List<UserField> fields) {
+        return userRepository.findAllFields(fields);
+    }
+
+    /**
+     * Loads the users with the given ids with one IN query per LOOKUP_CHUNK_SIZE
+     * ids instead of one query per id.
+     *
+     * @param ids ids of the users, duplicates are ignored
+     * @return the found users by id, in the order of the given ids; ids without
+     * a user are not contained
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, User> getUsersByIds(List<Long> ids) {
+        if (ids.size() > MAX_LOOKUP_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_LOOKUP_IDS + " users can be looked up at once");
+        }
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinctIds.remove(null);
+
+        Map<Long, User> usersById = new HashMap<>();
+        for (int from = 0; from < distinctIds.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, distinctIds.size()));
+            for (User user : userRepository.findAllById(chunk)) {
+                usersById.put(user.getId(), user);
+            }
+        }
+
+        // only the ids missing from the USER table are looked up in the archive
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : distinctIds) {
+            if (!usersById.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        for (int from = 0; from < missingIds.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = missingIds.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, missingIds.size()));
+            for (User user : userArchive.findAllById(chunk)) {
+                usersById.put(user.getId(), user);
+            }
+        }
+
+        // restore the requested order
+        Map<Long, User> orderedUsers = new LinkedHashMap<>();
+        for (Long id : distinctIds) {
+            User user = usersById.get(id);
+            if (user != null) {
+                orderedUsers.put(id, user);
+            }
+        }
+        return orderedUsers;
+    }
+
+    /**
+     * Returns the users that were created or changed after the given position
+     * of the change feed, oldest change first. A client keeps the change
+     * sequence number of the last user it got and passes it as since next time.
+     *
+     * @param since change sequence number of the last change the client has
+     *              seen, 0 to start from the beginning
+     * @param limit maximum number of users to return
+     * @throws ResponseStatusException 501 with cluster.enabled, see ChangeSequence
+     */
+    @Transactional(readOnly = true)
+    public List<User> getChangesSince(long since, int limit) {
+        if (since < 0 || limit < 1 || limit > MAX_CHANGES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "since must not be negative and limit must be between 1 and " + MAX_CHANGES);
+        }
+        // the bound only holds back this instance's transactions, changes of other instances could be skipped
+        if (changeSequence.isClustered()) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED,
+                    "The change feed is not available in clustered mode, use GET /users instead");
+        }
+        // changes still being committed below the bound must not be skipped
+        return userRepository.findByChangeSeqGreaterThanAndChangeSeqLessThanOrderByChangeSeqAsc(
+                since, changeSequence.getVisibleBound(), PageRequest.of(0, limit));
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
     public User createUser(User newUser) {
-        newUser.setToken(UUID.randomUUID().toString());
+        // invalid input must not hold a reservation, concurrent valid registrations would get 409
+        if (newUser.getUsername() == null || newUser.getUsername().isEmpty()
+                || newUser.getName() == null || newUser.getName().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A name and a username are required");
+        }
+        if (newUser.getPassword() == null || newUser.getPassword().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A password is required");
+        }
+        // set here rather than by the callers, the DTO mapping copies a null creation date over the default
+        newUser.setCreationDate(new Date());
+        tokenService.issue(newUser);
         newUser.setStatus(UserStatus.ONLINE);
-        checkIfUserExists(newUser);
-        // saves the given entity but data is only persisted in the database once
-        // flush() is called
-        newUser = userRepository.save(newUser);
-        userRepository.flush();
+        // concurrent registrations of the same username or name: only one gets past this point
+        RegistrationReservations.Reservation reservation =
+                registrationReservations.reserve(newUser.getUsername(), newUser.getName());
+        try {
+            transactionTemplate.executeWithoutResult(status -> checkIfUserExists(newUser));
+
+            // outside of any transaction, only the hash is stored and the raw password is dropped right away
+            newUser.setPasswordHash(passwordHasher.hash(newUser.getPassword()));
+            newUser.setPassword(null);
 
-        log.debug("Created Information for User: {}", newUser);
+            return transactionTemplate.execute(status -> register(newUser));
+        }
+        finally {
+            registrationReservations.releaseAfterTransaction(reservation);
+        }
+    }
+
+    private User register(User newUser) {
+        newUser.setChangeSeq(changeSequence.next());
+        try {
+            // saves the given entity but data is only persisted in the database once
+            // flush() is called
+            newUser = userRepository.save(newUser);
+            userRepository.flush();
+        }
+        catch (DataIntegrityViolationException e) {
+            // the reservations only cover this instance, another instance (or a
+            // direct insert) may have taken the username in the meantime
+            if (violatesUsernameConstraint(e)) {
+                throw UserAlreadyExistsException.USERNAME_TAKEN;
+            }
+            throw e;
+        }
+
+        // key=value fields instead of the whole entity, the guard saves the argument array when DEBUG is off
+        if (log.isDebugEnabled()) {
+            log.debug("event=user.created id={} username={} changeSeq={}",
+                    newUser.getId(), newUser.getUsername(), newUser.getChangeSeq());
+        }
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CREATED, newUser));
         return newUser;
     }
 
+    private static boolean violatesUsernameConstraint(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+                // H2 reports the index of the constraint, e.g. "PUBLIC.UK_USER_USERNAME_INDEX_2 ON ..."
+                return constraintName != null
+                        && constraintName.toLowerCase(Locale.ROOT).contains(User.USERNAME_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
     /**
      * This is a helper method that will check the uniqueness criteria of the
      * username and the name
@@ -60,74 +270,193 @@ public class UserService {
      * and throw an error otherwise.
      *
      * @param userToBeCreated
-     * @throws org.springframework.web.server.ResponseStatusException
+     * @throws UserAlreadyExistsException
      * @see User
      */
     private void checkIfUserExists(User userToBeCreated) {
-        User userByUsername = userRepository.findByUsername(userToBeCreated.getUsername());
+        // a username the directory does not know is free, only the name has to be checked
+        boolean usernameFree = userDirectory.isAbsent(userToBeCreated.getUsername());
+        User userByUsername = usernameFree ? null : userRepository.findByUsername(userToBeCreated.getUsername());
         User userByName = userRepository.findByName(userToBeCreated.getName());
 
-        String baseErrorMessage = "The %s provided %s not unique. Therefore, the user could not be created!";
+        // archived users keep their username and name
+        if (userByUsername == null || userByName == null) {
+            for (User archivedUser : userArchive.findByUsernameOrName(userToBeCreated.getUsername(),
+                    userToBeCreated.getName())) {
+                if (userByUsername == null && archivedUser.getUsername().equals(userToBeCreated.getUsername())) {
+                    userByUsername = archivedUser;
+                }
+                if (userByName == null && archivedUser.getName().equals(userToBeCreated.getName())) {
+                    userByName = archivedUser;
+                }
+            }
+        }
+
         if (userByUsername != null && userByName != null) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT,
-                    String.format(baseErrorMessage, "username and the name", "are"));
+            throw UserAlreadyExistsException.USERNAME_AND_NAME_TAKEN;
         } else if (userByUsername != null) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(baseErrorMessage, "username", "is"));
+            throw UserAlreadyExistsException.USERNAME_TAKEN;
         } else if (userByName != null) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(baseErrorMessage, "name", "is"));
+            throw UserAlreadyExistsException.NAME_TAKEN;
         }
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public User checkLoginCredentials(UserPostDTO userPostDTO) {
+        // unknown usernames are rejected without a query
+        if (userDirectory.isAbsent(userPostDTO.getUsername())) {
+            throw UserNotFoundException.USER_NOT_FOUND;
+        }
         // Retrieve the user from the database by username
-        User existingUser = userRepository.findByUsername(userPostDTO.getUsername());
+        User existingUser = transactionTemplate.execute(status -> {
+            User user = userRepository.findByUsername(userPostDTO.getUsername());
+            // users that have been offline for a long time are only found in the archive
+            return user != null ? user : userArchive.findByUsername(userPostDTO.getUsername());
+        });
 
         // Check if the user exists
-        if (existingUser != null) {
-            // Check if the password matches
-            if (existingUser.getName().equals(userPostDTO.getName())) {
-                return existingUser; // Login credentials are valid
-            } else {
-                throwUnauthorizedException("Wrong password");
-            }
-        } else {
-            throwNotFoundException("User not found");
+        if (existingUser == null) {
+            throw UserNotFoundException.USER_NOT_FOUND;
         }
-        // The return statement is needed for compilation, but it will not be reached
-        return existingUser;
+        // Check if the password matches, outside of any transaction
+        if (!passwordHasher.matches(userPostDTO.getPassword(), existingUser.getPasswordHash())) {
+            throw InvalidCredentialsException.WRONG_PASSWORD;
+        }
+        // Re-hash if the work factor has changed since the hash was created,
+        // the raw password is only available here
+        String newPasswordHash = passwordHasher.needsRehash(existingUser.getPasswordHash())
+                ? passwordHasher.hash(userPostDTO.getPassword()) : null;
+
+        return transactionTemplate.execute(status -> {
+            // only a successful login brings an archived user back
+            User user = existingUser.isArchived() ? rehydrate(existingUser.getId())
+                    : userRepository.findById(existingUser.getId())
+                            .orElseThrow(() -> UserNotFoundException.USER_NOT_FOUND);
+            if (newPasswordHash != null) {
+                user.setPasswordHash(newPasswordHash);
+            }
+            // every login starts a new session with a new token
+            tokenService.issue(user);
+            log.debug("event=user.login id={}", user.getId());
+            return user; // Login credentials are valid
+        });
     }
 
     public void throwNotFoundException(String message) {
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
+        throw new UserNotFoundException(message);
     }
 
     public void throwUnauthorizedException(String message) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, message);
+        throw new InvalidCredentialsException(message);
     }
 
     public User updateStatus(User user, UserStatus status) {
+        if (user.isArchived()) {
+            if (user.getStatus() == status) {
+                // archived users are OFFLINE, logging one out again changes nothing
+                return user;
+            }
+            user = rehydrate(user.getId());
+        }
+        UserStatus previousStatus = user.getStatus();
         user.setStatus(status);
-        return userRepository.save(user);
+        user.setChangeSeq(changeSequence.next());
+        if (status == UserStatus.OFFLINE) {
+            // logging out ends the session, the next login issues a new token
+            tokenService.expire(user);
+        }
+        User savedUser = userRepository.save(user);
+        if (log.isDebugEnabled()) {
+            log.debug("event=user.status id={} status={} changeSeq={}", savedUser.getId(), status, savedUser.getChangeSeq());
+        }
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.STATUS_CHANGED, savedUser,
+                previousStatus));
+        return savedUser;
     }
 
+    @Transactional(readOnly = true)
     public User getUserById(Long id) {
-        return userRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+        User user = userRepository.findById(id).orElseGet(() -> userArchive.findById(id));
+        if (user == null) {
+            throw UserNotFoundException.USER_NOT_FOUND;
+        }
+        return user;
+    }
+
+    /**
+     * Sparse variant of getUserById(), only the given fields are read from the database.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getUserById(Long id, List<UserField> fields) {
+        return userRepository.findFieldsById(id, fields).orElseGet(() -> {
+            User archivedUser = userArchive.findById(id);
+            if (archivedUser == null) {
+                throw UserNotFoundException.USER_NOT_FOUND;
+            }
+            return fieldsOf(archivedUser, fields);
+        });
     }
 
     public User updateUser(User updatedUser) {
         // Check if the user exists
         User existingUser = userRepository.findById(updatedUser.getId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+                .orElseGet(() -> rehydrate(updatedUser.getId()));
 
         // Update user properties
         existingUser.setBirthDate(updatedUser.getBirthDate());
+        existingUser.setChangeSeq(changeSequence.next());
 
         // Save the updated user
         User savedUser = userRepository.save(existingUser);
         userRepository.flush();
 
-        log.debug("Updated Information for User: {}", savedUser);
+        if (log.isDebugEnabled()) {
+            log.debug("event=user.updated id={} changeSeq={}", savedUser.getId(), savedUser.getChangeSeq());
+        }
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.PROFILE_UPDATED, savedUser));
         return savedUser;
     }
-}
\ No newline at end of file
+
+    /**
+     * Moves the archived user with the given id back into the USER table,
+     * within the current transaction.
+     *
+     * @return the user, now managed by JPA
+     */
+    private User rehydrate(Long id) {
+        // false if a concurrent login was first, the user is then in the USER table already
+        userArchive.rehydrate(id);
+        return userRepository.findById(id)
+                .orElseThrow(() -> UserNotFoundException.USER_NOT_FOUND);
+    }
+
+    // the given fields of a user, like UserProjectionRepository.findFieldsById() returns them
+    private static Map<String, Object> fieldsOf(User user, List<UserField> fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (UserField field : fields) {
+            switch (field) {
+                case ID:
+                    values.put(field.getFieldName(), user.getId());
+                    break;
+                case NAME:
+                    values.put(field.getFieldName(), user.getName());
+                    break;
+                case USERNAME:
+                    values.put(field.getFieldName(), user.getUsername());
+                    break;
+                case STATUS:
+                    values.put(field.getFieldName(), user.getStatus());
+                    break;
+                case CREATION_DATE:
+                    values.put(field.getFieldName(), user.getCreationDate());
+                    break;
+                case BIRTH_DATE:
+                    values.put(field.getFieldName(), user.getBirthDate());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+        return values;
+    }
+}
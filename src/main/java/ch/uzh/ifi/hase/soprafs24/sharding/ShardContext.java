@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * Shard Context
+ * Holds the shard the current thread works on. The ShardRoutingDataSource
+ * reads it whenever a connection is opened; without a shard, shard 0 is used.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the given shard current.
+     *
+     * @return the previously current shard, to be handed to restore()
+     */
+    public static Integer enter(int shard) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return previous;
+    }
+
+    public static void restore(Integer previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Runs the action with the given shard as current shard and restores the
+     * previous one afterwards.
+     */
+    public static <T> T callOn(int shard, Supplier<T> action) {
+        Integer previous = enter(shard);
+        try {
+            return action.get();
+        }
+        finally {
+            restore(previous);
+        }
+    }
+}
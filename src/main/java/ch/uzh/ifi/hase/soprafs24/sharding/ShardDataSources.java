@@ -0,0 +1,33 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shard DataSources
+ * The connection pools of all shards, index = shard number.
+ */
+public class ShardDataSources implements AutoCloseable {
+
+    private final List<HikariDataSource> dataSources;
+
+    public ShardDataSources(List<HikariDataSource> dataSources) {
+        this.dataSources = Collections.unmodifiableList(new ArrayList<>(dataSources));
+    }
+
+    public HikariDataSource get(int shard) {
+        return dataSources.get(shard);
+    }
+
+    public int size() {
+        return dataSources.size();
+    }
+
+    @Override
+    public void close() {
+        dataSources.forEach(HikariDataSource::close);
+    }
+}
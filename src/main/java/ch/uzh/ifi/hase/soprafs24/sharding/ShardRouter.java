@@ -0,0 +1,52 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * Shard Router
+ * Decides on which of the shards a user lives:
+ * - new users are placed by the hash of their username, which never changes
+ * - every shard hands out the ids shard + 1, shard + 1 + n, shard + 1 + 2n, ...
+ * (n = number of shards), so ids are unique across all shards and the shard
+ * of a user can be derived from the id alone
+ */
+public class ShardRouter {
+
+    private final int shardCount;
+
+    public ShardRouter(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardForUsername(String username) {
+        if (username == null) {
+            return 0;
+        }
+        // spread the bits of String.hashCode(), which are weak in the low bits for similar names
+        int hash = username.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    public int shardForId(long id) {
+        return (int) Math.floorMod(id - 1, (long) shardCount);
+    }
+
+    public int shardForUser(User user) {
+        return user.getId() != null ? shardForId(user.getId()) : shardForUsername(user.getUsername());
+    }
+
+    /**
+     * @return the first id the given shard hands out, the following ones are
+     * getShardCount() apart
+     */
+    public long firstIdOf(int shard) {
+        return shard + 1L;
+    }
+}
@@ -0,0 +1,18 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Shard Routing DataSource
+ * Hands out connections of the shard that is current in the ShardContext.
+ * Wrapped in a LazyConnectionDataSourceProxy, the shard of a transaction is
+ * the current shard at its first statement.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        return shard == null ? 0 : shard;
+    }
+}
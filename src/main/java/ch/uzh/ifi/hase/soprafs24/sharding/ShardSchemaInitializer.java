@@ -0,0 +1,57 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Shard Schema Initializer
+ * Hibernate only creates the schema on the default shard (shard 0). This copies
+ * that schema to the other shards and lets the id sequence of every shard hand
+ * out the ids ShardRouter expects (shard + 1, stepping by the number of shards).
+ * Uses H2's SCRIPT command, like the rest of the setup this is H2 only.
+ */
+public class ShardSchemaInitializer {
+
+    private final Logger log = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+
+    private final ShardDataSources shardDataSources;
+
+    public ShardSchemaInitializer(ShardDataSources shardDataSources) {
+        this.shardDataSources = shardDataSources;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        List<String> schema = new JdbcTemplate(shardDataSources.get(0)).queryForList("SCRIPT NODATA", String.class);
+
+        int shardCount = shardDataSources.size();
+        for (int shard = 0; shard < shardCount; shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+            if (shard > 0 && !hasUserTable(jdbcTemplate)) {
+                for (String statement : schema) {
+                    if (!statement.startsWith("--")) {
+                        jdbcTemplate.execute(statement);
+                    }
+                }
+                log.debug("Copied schema to shard {}", shard);
+            }
+
+            // next id above the existing ones that still belongs to this shard
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM user", Long.class);
+            long nextId = maxId + 1 + Math.floorMod(shard - maxId, (long) shardCount);
+            jdbcTemplate.execute("ALTER SEQUENCE hibernate_sequence RESTART WITH " + nextId + " INCREMENT BY " + shardCount);
+        }
+        log.info("Initialized {} user shards", shardCount);
+    }
+
+    private static boolean hasUserTable(JdbcTemplate jdbcTemplate) {
+        Integer tables = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'USER'",
+                Integer.class);
+        return tables != null && tables > 0;
+    }
+}
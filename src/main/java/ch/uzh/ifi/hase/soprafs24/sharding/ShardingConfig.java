@@ -0,0 +1,115 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sharding Configuration
+ * Spreads the user table over several databases (sharding.urls, one JDBC url
+ * per shard). Users are placed by the hash of their username, see ShardRouter.
+ * The JPA setup stays the same, it just runs on a DataSource routing to the
+ * current shard, and the UserRepository gets a ShardingRepositoryInterceptor
+ * that picks the shard per call.
+ * Enabled with sharding.enabled=true, which also turns off the read/write
+ * routing of datasource.routing.enabled.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    public ShardRouter shardRouter(@Value("${sharding.urls}") String[] urls) {
+        return new ShardRouter(urls.length);
+    }
+
+    @Bean
+    public ShardDataSources shardDataSources(DataSourceProperties properties,
+                                             @Value("${sharding.urls}") String[] urls,
+                                             @Value("${sharding.pool-size:5}") int poolSize) {
+        List<HikariDataSource> dataSources = new ArrayList<>();
+        for (int shard = 0; shard < urls.length; shard++) {
+            HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            dataSource.setJdbcUrl(urls[shard].trim());
+            dataSource.setPoolName("shard-" + shard);
+            dataSource.setMaximumPoolSize(poolSize);
+            dataSources.add(dataSource);
+        }
+        return new ShardDataSources(dataSources);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardDataSources shardDataSources) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shardDataSources.size(); shard++) {
+            targets.put(shard, shardDataSources.get(shard));
+        }
+
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(shardDataSources.get(0));
+        routingDataSource.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * The shard sequences step by the number of shards while the mapping
+     * says 1, so Hibernate must not insist on a matching increment.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardSequenceCustomizer() {
+        return properties -> properties.put("hibernate.id.sequence.increment_size_mismatch_strategy", "none");
+    }
+
+    @Bean
+    public ShardSchemaInitializer shardSchemaInitializer(ShardDataSources shardDataSources,
+                                                         EntityManagerFactory entityManagerFactory) {
+        // depends on the EntityManagerFactory so Hibernate has created the schema on shard 0 first
+        return new ShardSchemaInitializer(shardDataSources);
+    }
+
+    @Bean
+    public static BeanPostProcessor shardingRepositoryPostProcessor(ObjectProvider<ShardRouter> router,
+                                                                    ObjectProvider<PlatformTransactionManager> transactionManager,
+                                                                    ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof UserRepository)) {
+                    return bean;
+                }
+                ShardingRepositoryInterceptor interceptor = new ShardingRepositoryInterceptor(
+                        UserRepository.class, router.getObject(), transactionManager, entityManagerFactory);
+                if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+                    // in front of the repository's own transaction handling
+                    ((Advised) bean).addAdvice(0, interceptor);
+                    return bean;
+                }
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                proxyFactory.addAdvice(interceptor);
+                return proxyFactory.getProxy();
+            }
+        };
+    }
+}
@@ -0,0 +1,441 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Sharding Repository Interceptor
+ * Sits in front of the UserRepository and sends every call to the shard(s)
+ * holding the data:
+ * - calls by username, id or entity go to exactly one shard
+ * - findAll(), count(), findByName() and deleteAll() are scattered over all
+ * shards and the results gathered, sorted and paged results are merged in memory
+ * - findAllById(), saveAll() and deleteAll(users) only go to the shards that own
+ * one of the ids or users
+ * - findAllFields() is scattered like findAll(), findFieldsById() goes to the shard of the id
+ * - the grouped counts of the statistics are added up over all shards
+ * - the change feed query is asked on all shards and the pages merged
+ * Every repository method needs a routing, the interceptor refuses to start for
+ * a repository with a method it does not know.
+ *
+ * A transaction keeps one connection, so it is pinned to the shard of its
+ * first repository call. Reads of other shards inside that transaction run in
+ * their own read-only transaction on the other shard. Writes to other shards
+ * are rejected, they would not commit or roll back with the transaction.
+ */
+public class ShardingRepositoryInterceptor implements MethodInterceptor {
+
+    /**
+     * How a repository method is sent to the shards.
+     */
+    @FunctionalInterface
+    private interface Route {
+        Object invoke(MethodInvocation invocation) throws Throwable;
+    }
+
+    private final ShardRouter router;
+
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+
+    // routing of every repository method, keyed by its signature
+    private final Map<String, Route> routes = new HashMap<>();
+
+    // shard each running transaction is pinned to, keyed by its EntityManagerHolder
+    private final ThreadLocal<Map<Object, Integer>> pinnedShards = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    /**
+     * @throws IllegalStateException if a method of the repository interface has no routing
+     */
+    public ShardingRepositoryInterceptor(Class<?> repositoryInterface, ShardRouter router,
+                                         ObjectProvider<PlatformTransactionManager> transactionManager,
+                                         ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        this.router = router;
+        this.transactionManager = transactionManager;
+        this.entityManagerFactory = entityManagerFactory;
+
+        List<String> unsupported = new ArrayList<>();
+        for (Method method : repositoryInterface.getMethods()) {
+            Route route = routeOf(method);
+            if (route == null) {
+                unsupported.add(signatureOf(method));
+            }
+            else {
+                routes.put(signatureOf(method), route);
+            }
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalStateException(repositoryInterface.getSimpleName()
+                    + " methods not supported on sharded storage: " + unsupported);
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Route route = routes.get(signatureOf(invocation.getMethod()));
+        if (route == null) {
+            // not a repository method, e.g. Object.toString()
+            return invocation.proceed();
+        }
+        return route.invoke(invocation);
+    }
+
+    private Route routeOf(Method method) {
+        int parameters = method.getParameterCount();
+        switch (method.getName()) {
+            case "findByUsername":
+                return invocation -> onShard(router.shardForUsername((String) invocation.getArguments()[0]),
+                        invocation);
+            case "findById":
+            case "findFieldsById":
+            case "existsById":
+            case "getOne":
+            case "deleteById":
+                return invocation -> onShard(router.shardForId((Long) invocation.getArguments()[0]), invocation);
+            case "save":
+            case "saveAndFlush":
+                return invocation -> onShard(router.shardForUser((User) invocation.getArguments()[0]), invocation);
+            case "delete":
+            case "deleteInBatch":
+                if (method.getParameterTypes()[0] == Iterable.class) {
+                    return this::deleteUsers;
+                }
+                return invocation -> onShard(router.shardForUser((User) invocation.getArguments()[0]), invocation);
+            case "saveAll":
+                return this::saveAll;
+            case "flush":
+                // flushes the persistence context of the current transaction, whichever shard it is on
+                return MethodInvocation::proceed;
+            case "findByName":
+            case "findOne":
+                return this::findFirst;
+            case "exists":
+                return this::existsOnAny;
+            case "findAllById":
+                return this::findAllById;
+            case "findByChangeSeqGreaterThanAndChangeSeqLessThanOrderByChangeSeqAsc":
+                return this::findChanges;
+            case "findAllFields":
+                return this::findAllFields;
+            case "countByStatus":
+            case "countRegistrationsPerDay":
+                return this::countGroups;
+            case "findAll":
+                if (parameters == 0 || method.getParameterTypes()[parameters - 1] == Example.class) {
+                    return this::findAll;
+                }
+                if (method.getParameterTypes()[parameters - 1] == Sort.class) {
+                    return this::findAllSorted;
+                }
+                if (method.getParameterTypes()[parameters - 1] == Pageable.class) {
+                    return this::findPage;
+                }
+                return null;
+            case "count":
+                return this::count;
+            case "deleteAll":
+                if (parameters == 1) {
+                    return this::deleteUsers;
+                }
+                return this::onEveryShard;
+            case "deleteAllInBatch":
+                return this::onEveryShard;
+            default:
+                return null;
+        }
+    }
+
+    private Object findFirst(MethodInvocation invocation) throws Throwable {
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            Object result = onShard(shard, copyOf(invocation));
+            if (result != null && !Optional.empty().equals(result)) {
+                return result;
+            }
+        }
+        return invocation.getMethod().getReturnType() == Optional.class ? Optional.empty() : null;
+    }
+
+    private boolean existsOnAny(MethodInvocation invocation) throws Throwable {
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            if ((Boolean) onShard(shard, copyOf(invocation))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<User> findAll(MethodInvocation invocation) throws Throwable {
+        List<User> users = new ArrayList<>();
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            users.addAll(castList(onShard(shard, copyOf(invocation))));
+        }
+        // ids of different shards interleave, keep the single database order
+        users.sort(Comparator.comparing(User::getId));
+        return users;
+    }
+
+    private List<User> findAllSorted(MethodInvocation invocation) throws Throwable {
+        Object[] args = invocation.getArguments();
+        List<User> users = new ArrayList<>();
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            users.addAll(castList(onShard(shard, copyOf(invocation))));
+        }
+        users.sort(comparatorOf((Sort) args[args.length - 1]));
+        return users;
+    }
+
+    private Page<User> findPage(MethodInvocation invocation) throws Throwable {
+        Object[] args = invocation.getArguments();
+        Pageable pageable = (Pageable) args[args.length - 1];
+        // every shard may hold the whole page, so each one is asked for everything up to its end
+        Object[] shardArgs = args.clone();
+        if (pageable.isPaged()) {
+            shardArgs[args.length - 1] = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize(),
+                    pageable.getSort());
+        }
+        List<User> users = new ArrayList<>();
+        long total = 0;
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            Page<?> page = (Page<?>) onShard(shard, copyOf(invocation, shardArgs));
+            users.addAll(castList(page.getContent()));
+            total += page.getTotalElements();
+        }
+        users.sort(comparatorOf(pageable.getSort()));
+        if (pageable.isPaged()) {
+            int from = (int) Math.min(pageable.getOffset(), users.size());
+            users = new ArrayList<>(users.subList(from, Math.min(from + pageable.getPageSize(), users.size())));
+        }
+        return new PageImpl<>(users, pageable, total);
+    }
+
+    private List<Map<String, Object>> findAllFields(MethodInvocation invocation) throws Throwable {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            rows.addAll(castRows(onShard(shard, copyOf(invocation))));
+        }
+        // each shard is ordered by id, without the id field the rows stay in shard order
+        if (!rows.isEmpty() && rows.get(0).containsKey("id")) {
+            rows.sort(Comparator.comparing(row -> (Long) row.get("id")));
+        }
+        return rows;
+    }
+
+    private List<User> findAllById(MethodInvocation invocation) throws Throwable {
+        Map<Integer, List<Long>> idsByShard = new TreeMap<>();
+        for (Object id : (Iterable<?>) invocation.getArguments()[0]) {
+            idsByShard.computeIfAbsent(router.shardForId((Long) id), shard -> new ArrayList<>()).add((Long) id);
+        }
+        List<User> users = new ArrayList<>();
+        for (Map.Entry<Integer, List<Long>> entry : idsByShard.entrySet()) {
+            users.addAll(castList(onShard(entry.getKey(), copyOf(invocation, entry.getValue()))));
+        }
+        return users;
+    }
+
+    private List<User> saveAll(MethodInvocation invocation) throws Throwable {
+        // one user at a time, so the saved users come back in the given order
+        List<User> users = new ArrayList<>();
+        for (Object user : (Iterable<?>) invocation.getArguments()[0]) {
+            users.addAll(castList(onShard(router.shardForUser((User) user),
+                    copyOf(invocation, Collections.singletonList(user)))));
+        }
+        return users;
+    }
+
+    private Object deleteUsers(MethodInvocation invocation) throws Throwable {
+        Map<Integer, List<User>> usersByShard = new TreeMap<>();
+        for (Object user : (Iterable<?>) invocation.getArguments()[0]) {
+            usersByShard.computeIfAbsent(router.shardForUser((User) user), shard -> new ArrayList<>()).add((User) user);
+        }
+        for (Map.Entry<Integer, List<User>> entry : usersByShard.entrySet()) {
+            onShard(entry.getKey(), copyOf(invocation, entry.getValue()));
+        }
+        return null;
+    }
+
+    private Object onEveryShard(MethodInvocation invocation) throws Throwable {
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            onShard(shard, copyOf(invocation));
+        }
+        return null;
+    }
+
+    private List<User> findChanges(MethodInvocation invocation) throws Throwable {
+        // each shard returns its oldest changes, the oldest of all of them make up the page
+        List<User> users = new ArrayList<>();
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            users.addAll(castList(onShard(shard, copyOf(invocation))));
+        }
+        users.sort(Comparator.comparing(User::getChangeSeq));
+        int limit = ((Pageable) invocation.getArguments()[2]).getPageSize();
+        return users.size() > limit ? new ArrayList<>(users.subList(0, limit)) : users;
+    }
+
+    private List<Object[]> countGroups(MethodInvocation invocation) throws Throwable {
+        // [group, count] rows of every shard, the counts of the same group added up
+        Map<Object, Long> counts = new HashMap<>();
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            for (Object row : (List<?>) onShard(shard, copyOf(invocation))) {
+                Object[] columns = (Object[]) row;
+                counts.merge(columns[0], (Long) columns[1], Long::sum);
+            }
+        }
+        List<Object[]> rows = new ArrayList<>();
+        counts.forEach((group, count) -> rows.add(new Object[]{group, count}));
+        return rows;
+    }
+
+    private long count(MethodInvocation invocation) throws Throwable {
+        long count = 0;
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            count += (Long) onShard(shard, copyOf(invocation));
+        }
+        return count;
+    }
+
+    private Object onShard(int shard, MethodInvocation invocation) throws Throwable {
+        Object holder = TransactionSynchronizationManager.isActualTransactionActive()
+                ? TransactionSynchronizationManager.getResource(entityManagerFactory.getObject())
+                : null;
+        if (holder == null) {
+            // no transaction around, the repository opens its own one on the shard
+            return proceedOn(shard, invocation);
+        }
+
+        Integer pinned = pinnedShards.get().get(holder);
+        if (pinned == null) {
+            pin(holder, shard);
+            return proceedOn(shard, invocation);
+        }
+        if (pinned == shard) {
+            return proceedOn(shard, invocation);
+        }
+        if (isWrite(invocation.getMethod())) {
+            throw new IllegalTransactionStateException("UserRepository." + invocation.getMethod().getName()
+                    + " on shard " + shard + " inside a transaction on shard " + pinned
+                    + ", the write would not be atomic with the transaction");
+        }
+        return proceedInNewTransaction(shard, invocation);
+    }
+
+    private Object proceedOn(int shard, MethodInvocation invocation) throws Throwable {
+        Integer previous = ShardContext.enter(shard);
+        try {
+            return invocation.proceed();
+        }
+        finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    private Object proceedInNewTransaction(int shard, MethodInvocation invocation) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager.getObject());
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+
+        Integer previous = ShardContext.enter(shard);
+        try {
+            return template.execute(status -> {
+                pin(TransactionSynchronizationManager.getResource(entityManagerFactory.getObject()), shard);
+                try {
+                    return invocation.proceed();
+                }
+                catch (RuntimeException | Error e) {
+                    throw e;
+                }
+                catch (Throwable t) {
+                    throw new UndeclaredThrowableException(t);
+                }
+            });
+        }
+        finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    private void pin(Object holder, int shard) {
+        Map<Object, Integer> pinned = pinnedShards.get();
+        pinned.put(holder, shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                pinned.remove(holder);
+            }
+        });
+    }
+
+    private static boolean isWrite(Method method) {
+        return method.getName().startsWith("save") || method.getName().startsWith("delete");
+    }
+
+    private static Comparator<User> comparatorOf(Sort sort) {
+        Comparator<User> comparator = (first, second) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<User> byProperty = Comparator.comparing(
+                    user -> new BeanWrapperImpl(user).getPropertyValue(order.getProperty()),
+                    ShardingRepositoryInterceptor::compareValues);
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        // ids of different shards interleave, ties keep the single database order
+        return comparator.thenComparing(User::getId);
+    }
+
+    // nulls first, like H2 sorts them
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : -1) : 1;
+        }
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+
+    private static String signatureOf(Method method) {
+        return method.getName() + Arrays.toString(method.getParameterTypes());
+    }
+
+    private static MethodInvocation copyOf(MethodInvocation invocation, Object... arguments) {
+        ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+        return arguments.length == 0 ? proxyInvocation.invocableClone() : proxyInvocation.invocableClone(arguments);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<User> castList(Object result) {
+        return (List<User>) result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> castRows(Object result) {
+        return (List<Map<String, Object>>) result;
+    }
+}
@@ -0,0 +1,106 @@
+package ch.uzh.ifi.hase.soprafs24.snapshot;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+/**
+ * User Snapshot Reader
+ * Reads the users of a snapshot written by the UserSnapshotWriter, refilling
+ * a direct buffer from the file channel as needed.
+ */
+public class UserSnapshotReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long count;
+    private long read;
+
+    public UserSnapshotReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.flip();
+
+        require(UserSnapshotWriter.HEADER_SIZE);
+        if (buffer.getInt() != UserSnapshotWriter.MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a user snapshot");
+        }
+        short version = buffer.getShort();
+        if (version != UserSnapshotWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        this.count = buffer.getLong();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the next user or null if all users have been read
+     */
+    public User next() throws IOException {
+        if (read == count) {
+            return null;
+        }
+        require(Long.BYTES + Byte.BYTES + 2 * Long.BYTES);
+        User user = new User();
+        user.setId(buffer.getLong());
+        byte status = buffer.get();
+        user.setStatus(status < 0 ? null : UserStatus.values()[status]);
+        user.setCreationDate(toDate(buffer.getLong()));
+        user.setBirthDate(toDate(buffer.getLong()));
+        user.setName(getString());
+        user.setUsername(getString());
+        user.setToken(getString());
+        user.setPasswordHash(getString());
+        read++;
+        return user;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String getString() throws IOException {
+        require(Integer.BYTES);
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static Date toDate(long millis) {
+        return millis == UserSnapshotWriter.NULL_DATE ? null : new Date(millis);
+    }
+}
@@ -0,0 +1,215 @@
+package ch.uzh.ifi.hase.soprafs24.snapshot;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UsersReloadedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * User Snapshot Service
+ * Exports all users into a binary snapshot file and restores them from it.
+ * Both directions bypass JPA and work on the USER table with plain JDBC:
+ * the export streams the rows, the restore inserts them in JDBC batches within
+ * one transaction and then moves the id sequence past the restored ids.
+ * Archived users (USER_ARCHIVE, see UserArchive) are exported with the others
+ * and restored into the USER table; the archive job moves them back later.
+ * Archived rows with the id or username of a restored user are removed, the
+ * snapshot wins.
+ * If snapshot.restore-on-startup is set, the snapshot at snapshot.path is
+ * restored when the application starts.
+ */
+@Service
+public class UserSnapshotService implements ApplicationRunner {
+
+    private static final String COLUMNS = "id, name, username, token, status, password_hash, creation_date, "
+            + "birth_date";
+    private static final String SELECT_SQL = "SELECT " + COLUMNS + " FROM user UNION ALL SELECT " + COLUMNS
+            + " FROM user_archive";
+    private static final String INSERT_SQL = "INSERT INTO user (id, name, username, token, status, password_hash, "
+            + "creation_date, birth_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(UserSnapshotService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Path snapshotPath;
+    private final boolean restoreOnStartup;
+    private final int batchSize;
+    private final boolean sharded;
+
+    public UserSnapshotService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${snapshot.path:${java.io.tmpdir}/soprafs24/users.snapshot}") String snapshotPath,
+                               @Value("${snapshot.restore-on-startup:false}") boolean restoreOnStartup,
+                               @Value("${snapshot.batch-size:1000}") int batchSize,
+                               @Value("${sharding.enabled:false}") boolean sharded) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.restoreOnStartup = restoreOnStartup;
+        this.batchSize = batchSize;
+        this.sharded = sharded;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (restoreOnStartup && Files.exists(snapshotPath)) {
+            restore(snapshotPath);
+        }
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Writes all users into the snapshot file at the given path.
+     *
+     * @return the number of exported users
+     */
+    public long export(Path path) throws IOException {
+        checkNotSharded();
+        long start = System.nanoTime();
+        Files.createDirectories(path.toAbsolutePath().getParent());
+
+        try (UserSnapshotWriter writer = new UserSnapshotWriter(path)) {
+            jdbcTemplate.query(connection -> {
+                // stream the rows instead of loading the whole table
+                PreparedStatement statement = connection.prepareStatement(SELECT_SQL);
+                statement.setFetchSize(batchSize);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> {
+                User user = new User();
+                user.setId(resultSet.getLong("id"));
+                user.setName(resultSet.getString("name"));
+                user.setUsername(resultSet.getString("username"));
+                user.setToken(resultSet.getString("token"));
+                int status = resultSet.getInt("status");
+                user.setStatus(resultSet.wasNull() ? null : UserStatus.values()[status]);
+                user.setPasswordHash(resultSet.getString("password_hash"));
+                user.setCreationDate(resultSet.getTimestamp("creation_date"));
+                user.setBirthDate(resultSet.getDate("birth_date"));
+                try {
+                    writer.write(user);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            log.info("Exported {} users to {} in {} ms", writer.getCount(), path,
+                    (System.nanoTime() - start) / 1_000_000);
+            return writer.getCount();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Inserts all users of the snapshot at the given path. Either all users are
+     * restored or none.
+     *
+     * @return the number of restored users
+     */
+    public long restore(Path path) throws IOException {
+        checkNotSharded();
+        long start = System.nanoTime();
+
+        long restored;
+        try (UserSnapshotReader reader = new UserSnapshotReader(path)) {
+            restored = transactionTemplate.execute(status -> {
+                try {
+                    return insertAll(reader);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        log.info("Restored {} users from {} in {} ms", restored, path, (System.nanoTime() - start) / 1_000_000);
+        eventPublisher.publishEvent(new UsersReloadedEvent(restored));
+        return restored;
+    }
+
+    private long insertAll(UserSnapshotReader reader) throws IOException {
+        long restored = 0;
+        long maxId = 0;
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR,
+                Types.TIMESTAMP, Types.DATE};
+
+        User user;
+        while ((user = reader.next()) != null) {
+            batch.add(new Object[]{
+                    user.getId(),
+                    user.getName(),
+                    user.getUsername(),
+                    user.getToken(),
+                    user.getStatus() == null ? null : user.getStatus().ordinal(),
+                    user.getPasswordHash(),
+                    user.getCreationDate() == null ? null : new Timestamp(user.getCreationDate().getTime()),
+                    user.getBirthDate() == null ? null : new java.sql.Date(user.getBirthDate().getTime())
+            });
+            maxId = Math.max(maxId, user.getId());
+
+            if (batch.size() == batchSize) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, types);
+                restored += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, types);
+            restored += batch.size();
+        }
+
+        // a restored user must not also be in the archive, a later rehydrate would collide with it
+        jdbcTemplate.update("DELETE FROM user_archive WHERE id IN (SELECT id FROM user) "
+                + "OR username IN (SELECT username FROM user)");
+
+        // the snapshot has no change feed positions, the restored users are new changes
+        jdbcTemplate.update("UPDATE user SET change_seq = NEXT VALUE FOR user_change_seq WHERE change_seq IS NULL");
+
+        // ids handed out by Hibernate must not collide with the restored ones
+        Long nextId = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR hibernate_sequence", Long.class);
+        if (nextId != null && nextId <= maxId) {
+            jdbcTemplate.execute("ALTER SEQUENCE hibernate_sequence RESTART WITH " + (maxId + 1));
+        }
+        return restored;
+    }
+
+    private void checkNotSharded() {
+        // the snapshot works on the table of a single database, it would only see shard 0
+        if (sharded) {
+            throw new IllegalStateException("Snapshots are not supported when the users are sharded");
+        }
+    }
+}
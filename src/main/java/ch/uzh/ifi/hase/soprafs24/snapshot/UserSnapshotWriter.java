@@ -0,0 +1,111 @@
+package ch.uzh.ifi.hase.soprafs24.snapshot;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * User Snapshot Writer
+ * Writes users into a compact binary snapshot file:
+ * - header: [magic: int][version: short][number of users: long]
+ * - per user: [id: long][status: byte][creation date: long][birth date: long]
+ * [name][username][token][password hash]
+ * Strings are stored as [length: int][UTF-8 bytes] (length -1 for null), dates
+ * as epoch milliseconds (Long.MIN_VALUE for null).
+ * Records are collected in a direct buffer and written to the file channel
+ * whenever the buffer is full.
+ */
+public class UserSnapshotWriter implements Closeable {
+
+    static final int MAGIC = 0x55534e50; // "USNP"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+    static final long NULL_DATE = Long.MIN_VALUE;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long count;
+
+    public UserSnapshotWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        // the number of users is filled in by close()
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(0);
+    }
+
+    public void write(User user) throws IOException {
+        byte[] name = encode(user.getName());
+        byte[] username = encode(user.getUsername());
+        byte[] token = encode(user.getToken());
+        byte[] passwordHash = encode(user.getPasswordHash());
+
+        int size = Long.BYTES + Byte.BYTES + 2 * Long.BYTES
+                + 4 * Integer.BYTES + length(name) + length(username) + length(token) + length(passwordHash);
+        if (size > buffer.capacity()) {
+            throw new IllegalArgumentException("User " + user.getId() + " is too large for a snapshot");
+        }
+        if (buffer.remaining() < size) {
+            flush();
+        }
+
+        buffer.putLong(user.getId());
+        buffer.put(user.getStatus() == null ? -1 : (byte) user.getStatus().ordinal());
+        buffer.putLong(user.getCreationDate() == null ? NULL_DATE : user.getCreationDate().getTime());
+        buffer.putLong(user.getBirthDate() == null ? NULL_DATE : user.getBirthDate().getTime());
+        put(name);
+        put(username);
+        put(token);
+        put(passwordHash);
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer countBuffer = ByteBuffer.allocate(Long.BYTES).putLong(0, count);
+            channel.write(countBuffer, Integer.BYTES + Short.BYTES);
+            channel.force(false);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void put(byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
@@ -0,0 +1,204 @@
+package ch.uzh.ifi.hase.soprafs24.stats;
+
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.event.UsersReloadedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User Statistics
+ * Total number of users, users per status and registrations per day, kept up
+ * to date from the committed UserChangedEvents so GET /users/stats never has
+ * to look at the user table. The counters are LongAdders, i.e. concurrent
+ * registrations and logins add to different cells instead of contending on
+ * one value.
+ * Changes the events do not cover (other cluster nodes, snapshot restores,
+ * direct database writes) are picked up by reconcile(), which recounts from
+ * the database every stats.reconcile-interval-ms and replaces the counters.
+ * The recount is not atomic with the events, so a change that commits while a
+ * reconciliation runs can be off by one until the next reconciliation: it is
+ * counted twice if the recount already sees it but its event only arrives
+ * after the counters were replaced, and it is missed if its event still goes
+ * to the replaced counters but the recount does not see it yet. Between
+ * reconciliations the numbers are therefore approximate.
+ */
+@Component
+public class UserStatistics implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(UserStatistics.class);
+
+    private final UserRepository userRepository;
+    private final UserArchive userArchive;
+
+    private volatile Counters counters = new Counters();
+    private volatile long reconciledAt;
+
+    public UserStatistics(@Qualifier("userRepository") UserRepository userRepository, UserArchive userArchive) {
+        this.userRepository = userRepository;
+        this.userArchive = userArchive;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        Counters current = counters;
+        User user = event.getUser();
+        switch (event.getType()) {
+            case CREATED:
+                current.total.increment();
+                current.add(user.getStatus(), 1);
+                if (user.getCreationDate() != null) {
+                    current.registrationsOn(dayOf(user.getCreationDate())).increment();
+                }
+                break;
+            case STATUS_CHANGED:
+                if (event.getPreviousStatus() != user.getStatus()) {
+                    current.add(event.getPreviousStatus(), -1);
+                    current.add(user.getStatus(), 1);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @EventListener
+    public void onUsersReloaded(UsersReloadedEvent event) {
+        reconcile();
+    }
+
+    // once all beans are up, e.g. the schemas of all shards exist
+    @EventListener
+    public void onApplicationStarted(ApplicationStartedEvent event) {
+        reconcile();
+    }
+
+    /**
+     * Recounts everything from the database and replaces the counters. Changes
+     * committing meanwhile may be counted twice or not at all, see above.
+     */
+    @Scheduled(initialDelayString = "${stats.reconcile-interval-ms:60000}",
+            fixedDelayString = "${stats.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        Counters recounted = new Counters();
+        // archived users are still registered users, moving them does not change the numbers
+        countByStatus(recounted, userRepository.countByStatus());
+        countByStatus(recounted, userArchive.countByStatus());
+        countRegistrationsPerDay(recounted, userRepository.countRegistrationsPerDay());
+        countRegistrationsPerDay(recounted, userArchive.countRegistrationsPerDay());
+
+        long drift = recounted.total.sum() - counters.total.sum();
+        if (drift != 0) {
+            log.debug("Reconciled user statistics, total was off by {}", drift);
+        }
+        counters = recounted;
+        reconciledAt = System.currentTimeMillis();
+    }
+
+    public long getTotal() {
+        return counters.total.sum();
+    }
+
+    public Map<UserStatus, Long> getCountsByStatus() {
+        Map<UserStatus, Long> counts = new EnumMap<>(UserStatus.class);
+        for (UserStatus status : UserStatus.values()) {
+            counts.put(status, counters.byStatus(status).sum());
+        }
+        return counts;
+    }
+
+    public SortedMap<LocalDate, Long> getRegistrationsPerDay() {
+        SortedMap<LocalDate, Long> histogram = new TreeMap<>();
+        counters.registrationsPerDay.forEach((day, count) -> histogram.put(day, count.sum()));
+        return histogram;
+    }
+
+    public long getReconciledAt() {
+        return reconciledAt;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("users.total", this, UserStatistics::getTotal)
+                .description("Registered users")
+                .register(registry);
+        for (UserStatus status : UserStatus.values()) {
+            Gauge.builder("users.status", this, statistics -> statistics.counters.byStatus(status).sum())
+                    .tag("status", status.name())
+                    .description("Users per status")
+                    .register(registry);
+        }
+    }
+
+    private static void countByStatus(Counters counters, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            long count = (Long) row[1];
+            counters.total.add(count);
+            counters.add((UserStatus) row[0], count);
+        }
+    }
+
+    private static void countRegistrationsPerDay(Counters counters, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                counters.registrationsOn(((java.sql.Date) row[0]).toLocalDate()).add((Long) row[1]);
+            }
+        }
+    }
+
+    // same day boundaries as the CAST(creationDate AS date) of the reconciliation
+    private static LocalDate dayOf(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static final class Counters {
+
+        private final LongAdder total = new LongAdder();
+        private final Map<UserStatus, LongAdder> byStatus = new EnumMap<>(UserStatus.class);
+        private final ConcurrentMap<LocalDate, LongAdder> registrationsPerDay = new ConcurrentHashMap<>();
+
+        private Counters() {
+            for (UserStatus status : UserStatus.values()) {
+                byStatus.put(status, new LongAdder());
+            }
+        }
+
+        private LongAdder byStatus(UserStatus status) {
+            return byStatus.get(status);
+        }
+
+        private void add(UserStatus status, long delta) {
+            if (status != null) {
+                byStatus.get(status).add(delta);
+            }
+        }
+
+        private LongAdder registrationsOn(LocalDate day) {
+            return registrationsPerDay.computeIfAbsent(day, d -> new LongAdder());
+        }
+    }
+}
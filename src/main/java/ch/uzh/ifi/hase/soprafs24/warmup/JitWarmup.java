@@ -0,0 +1,190 @@
+package ch.uzh.ifi.hase.soprafs24.warmup;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JIT Warm-up
+ * Runs the user hot paths (registration, login, reads, updates, the DTO
+ * mapping and the Jackson serialization) on a few synthetic users right after
+ * startup, so that the JIT has compiled them and Hibernate has its query plans
+ * cached before the first real request comes in.
+ * Every synthetic user lives in its own transaction that is rolled back at the
+ * end, nothing is left in the database and no UserChangedEvent listener runs.
+ * Registration and login join it rather than committing their own short
+ * transactions.
+ *
+ * Spring Boot only switches the readiness state (/actuator/health/readiness)
+ * to ACCEPTING_TRAFFIC after all ApplicationRunners are done, so the instance
+ * reports ready once the warm-up is over. App Engine's warm-up request
+ * (/_ah/warmup, see WarmupController) waits for it as well.
+ * The duration is exported as the metric warmup.duration, the number of
+ * synthetic users whose run failed as warmup.failures.
+ */
+@Component
+public class JitWarmup implements ApplicationRunner, MeterBinder {
+
+    private static final String PASSWORD = "warmupPassword";
+
+    private final Logger log = LoggerFactory.getLogger(JitWarmup.class);
+
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int users;
+    private final int iterations;
+    private final int logins;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile long durationNanos;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public JitWarmup(UserService userService, ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+                     @Value("${warmup.enabled:true}") boolean enabled,
+                     @Value("${warmup.users:4}") int users,
+                     @Value("${warmup.iterations:2000}") int iterations,
+                     @Value("${warmup.logins:8}") int logins) {
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.users = users;
+        this.iterations = iterations;
+        this.logins = logins;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (enabled && users > 0) {
+                warmUp();
+            }
+        }
+        finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * @return whether the warm-up is over (or disabled), waits up to the given time for it
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * @return the number of synthetic users whose warm-up failed, their hot paths have not been run
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TimeGauge.builder("warmup.duration", this, TimeUnit.NANOSECONDS, warmup -> warmup.durationNanos)
+                .description("Time the JIT warm-up took before the instance reported ready")
+                .register(registry);
+        Gauge.builder("warmup.failures", failures, AtomicInteger::get)
+                .description("Synthetic users whose warm-up failed")
+                .register(registry);
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        // a random prefix, the synthetic users must not collide with real ones
+        String prefix = "warmup-" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-";
+        for (int user = 0; user < users; user++) {
+            String username = prefix + user;
+            try {
+                transactionTemplate.execute(status -> {
+                    status.setRollbackOnly();
+                    exercise(username, iterations / users, logins / users);
+                    return null;
+                });
+            }
+            catch (RuntimeException e) {
+                // a failed warm-up only means a slower start, it must not stop the application
+                failures.incrementAndGet();
+                log.warn("Warm-up with user {} failed", username, e);
+            }
+        }
+        durationNanos = System.nanoTime() - start;
+        log.info("Warm-up with {} users and {} iterations took {} ms, {} failed", users, iterations,
+                getDurationMillis(), failures.get());
+    }
+
+    private void exercise(String username, int iterations, int logins) {
+        UserPostDTO userPostDTO = new UserPostDTO();
+        userPostDTO.setName(username);
+        userPostDTO.setUsername(username);
+        userPostDTO.setPassword(PASSWORD);
+        User created = userService.createUser(DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO));
+        serialize(DTOMapper.INSTANCE.convertEntityToUserLoginDTO(created));
+        Long id = created.getId();
+
+        for (int i = 0; i < iterations; i++) {
+            // detached, so the reads go to the database instead of the persistence context
+            entityManager.clear();
+            User user = userService.getUserById(id);
+            serialize(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+            userService.getUsersByIds(Collections.singletonList(id));
+        }
+
+        for (int i = 0; i < logins; i++) {
+            entityManager.clear();
+            serialize(DTOMapper.INSTANCE.convertEntityToUserLoginDTO(userService.checkLoginCredentials(userPostDTO)));
+        }
+
+        UserPutDTO userPutDTO = new UserPutDTO();
+        userPutDTO.setBirthDate(new Date());
+        User update = DTOMapper.INSTANCE.convertUserPutDTOtoEntity(userPutDTO);
+        update.setId(id);
+        userService.updateUser(update);
+        userService.updateStatus(userService.getUserById(id), UserStatus.OFFLINE);
+    }
+
+    private void serialize(Object value) {
+        try {
+            objectMapper.writeValueAsBytes(value);
+        }
+        catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ch.uzh.ifi.hase.soprafs24;
+
+import ch.uzh.ifi.hase.soprafs24.audit.AuditEvent;
+import ch.uzh.ifi.hase.soprafs24.audit.AuditSegmentLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Shuts the application down while registrations keep coming in over HTTP and
+ * checks that every registration answered with 201 has been stored and audited.
+ * Requests refused during the shutdown are fine, the clients retry them on
+ * another instance.
+ */
+public class GracefulShutdownIntegrationTest {
+
+    private static final int CLIENTS = 16;
+    private static final String DATABASE_URL = "jdbc:h2:mem:shutdowntest";
+
+    @TempDir
+    Path auditDirectory;
+
+    @Test
+    public void close_underConcurrentRegistrations_noAcknowledgedWriteLost() throws Exception {
+        // command line arguments, application.properties would override default properties
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .run("--server.port=0",
+                        "--server.shutdown=graceful",
+                        "--spring.datasource.url=" + DATABASE_URL + ";DB_CLOSE_DELAY=-1",
+                        // create-drop would drop the table on close
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--audit.directory=" + auditDirectory,
+                        // not the default file, which another context of this JVM may hold
+                        "--directory.path=" + auditDirectory.resolve("users.dir"),
+                        "--limits.enabled=false",
+                        "--warmup.enabled=false");
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        URI registration = URI.create("http://localhost:" + port + "/users/registration");
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+
+        Set<String> acknowledged = ConcurrentHashMap.newKeySet();
+        Queue<Integer> unexpected = new ConcurrentLinkedQueue<>();
+        AtomicInteger sequence = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.execute(() -> {
+                while (running.get()) {
+                    String username = "shutdown" + sequence.incrementAndGet();
+                    HttpRequest request = HttpRequest.newBuilder(registration)
+                            .timeout(Duration.ofSeconds(10))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + username + "\",\"username\":\""
+                                    + username + "\",\"password\":\"shutdownPassword\"}"))
+                            .build();
+                    try {
+                        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status == 201) {
+                            acknowledged.add(username);
+                        }
+                        else if (status != 503) {
+                            unexpected.add(status);
+                        }
+                    }
+                    catch (IOException e) {
+                        // refused once the server stopped accepting, never acknowledged
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        Thread.sleep(1_500);
+        int acknowledgedBeforeShutdown = acknowledged.size();
+        context.close();
+        running.set(false);
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(acknowledgedBeforeShutdown > 0);
+        assertTrue(unexpected.isEmpty(), "Unexpected responses " + unexpected);
+
+        Set<String> stored = new HashSet<>();
+        try (Connection connection = DriverManager.getConnection(DATABASE_URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT username FROM user")) {
+            while (resultSet.next()) {
+                stored.add(resultSet.getString(1));
+            }
+        }
+        assertTrue(stored.containsAll(acknowledged));
+
+        Set<String> audited = new HashSet<>();
+        try (AuditSegmentLog auditLog = new AuditSegmentLog(auditDirectory, 16 * 1024 * 1024, 16)) {
+            auditLog.replay(event -> {
+                if (event.getType() == AuditEvent.Type.REGISTERED) {
+                    audited.add(event.getUsername());
+                }
+            });
+        }
+        assertTrue(audited.containsAll(acknowledged));
+    }
+}
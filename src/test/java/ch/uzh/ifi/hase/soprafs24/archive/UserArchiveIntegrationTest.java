@@ -0,0 +1,184 @@
+package ch.uzh.ifi.hase.soprafs24.archive;
+
+import ch.uzh.ifi.hase.soprafs24.cache.UserJsonCache;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserAlreadyExistsException;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import ch.uzh.ifi.hase.soprafs24.snapshot.UserSnapshotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WebAppConfiguration
+@SpringBootTest
+public class UserArchiveIntegrationTest {
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserArchive userArchive;
+
+    @Autowired
+    private UserSnapshotService userSnapshotService;
+
+    @Autowired
+    private UserJsonCache userJsonCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setup() {
+        userRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM user_archive");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM user_archive");
+    }
+
+    private User createUser(String username) {
+        User user = new User();
+        user.setName("Name " + username);
+        user.setUsername(username);
+        user.setPassword("archivePassword");
+        return userService.createUser(user);
+    }
+
+    private UserPostDTO credentials(String username, String password) {
+        UserPostDTO credentials = new UserPostDTO();
+        credentials.setUsername(username);
+        credentials.setPassword(password);
+        return credentials;
+    }
+
+    @Test
+    public void archiveOfflineSince_onlyOfflineUsersMoved() {
+        User offline = userService.updateStatus(createUser("offline"), UserStatus.OFFLINE);
+        User online = createUser("online");
+
+        assertEquals(1, userArchive.archiveOfflineSince(new Date(System.currentTimeMillis() + 1_000)));
+
+        assertFalse(userRepository.findById(offline.getId()).isPresent());
+        assertTrue(userRepository.findById(online.getId()).isPresent());
+        assertEquals(1, userService.getUsers().size());
+        assertEquals("offline", userArchive.findById(offline.getId()).getUsername());
+    }
+
+    @Test
+    public void archivedUser_readsFallBackToArchive() {
+        User offline = userService.updateStatus(createUser("offline"), UserStatus.OFFLINE);
+        userArchive.archiveOfflineSince(new Date(System.currentTimeMillis() + 1_000));
+
+        User found = userService.getUserById(offline.getId());
+        assertEquals("offline", found.getUsername());
+        assertEquals(UserStatus.OFFLINE, found.getStatus());
+        assertTrue(found.isArchived());
+        assertEquals(1, userService.getUsersByIds(Collections.singletonList(offline.getId())).size());
+
+        // the username stays taken
+        User duplicate = new User();
+        duplicate.setName("Other Name");
+        duplicate.setUsername("offline");
+        duplicate.setPassword("archivePassword");
+        assertThrows(UserAlreadyExistsException.class, () -> userService.createUser(duplicate));
+    }
+
+    @Test
+    public void archiveOfflineSince_cachedProfilesOfOtherUsersKept() {
+        User offline = userService.updateStatus(createUser("offline"), UserStatus.OFFLINE);
+        User online = createUser("online");
+        userJsonCache.getProfile(online.getId(), () -> online);
+        userJsonCache.getList(() -> Collections.singletonList(online));
+
+        userArchive.archiveOfflineSince(new Date(System.currentTimeMillis() + 1_000));
+
+        // only the list changed, the other profiles are not evicted
+        assertNotNull(userJsonCache.getProfile(online.getId(), () -> fail("profile of online evicted")));
+        AtomicBoolean listReloaded = new AtomicBoolean();
+        userJsonCache.getList(() -> {
+            listReloaded.set(true);
+            return Collections.singletonList(online);
+        });
+        assertTrue(listReloaded.get());
+        assertNotNull(userArchive.findById(offline.getId()));
+    }
+
+    @Test
+    public void updateStatus_archivedUserOffline_staysArchived() {
+        User offline = userService.updateStatus(createUser("offline"), UserStatus.OFFLINE);
+        userArchive.archiveOfflineSince(new Date(System.currentTimeMillis() + 1_000));
+
+        User loggedOut = userService.updateStatus(userService.getUserById(offline.getId()), UserStatus.OFFLINE);
+
+        assertEquals(UserStatus.OFFLINE, loggedOut.getStatus());
+        assertNotNull(userArchive.findById(offline.getId()));
+        assertFalse(userRepository.findById(offline.getId()).isPresent());
+    }
+
+    @Test
+    public void checkLoginCredentials_archivedUser_rehydrated() {
+        User offline = userService.updateStatus(createUser("offline"), UserStatus.OFFLINE);
+        userArchive.archiveOfflineSince(new Date(System.currentTimeMillis() + 1_000));
+
+        // a wrong password leaves the user where it is
+        assertThrows(InvalidCredentialsException.class,
+                () -> userService.checkLoginCredentials(credentials("offline", "wrongPassword")));
+        assertNotNull(userArchive.findById(offline.getId()));
+
+        User loggedIn = userService.checkLoginCredentials(credentials("offline", "archivePassword"));
+
+        assertEquals(offline.getId(), loggedIn.getId());
+        assertFalse(loggedIn.isArchived());
+        assertNull(userArchive.findById(offline.getId()));
+        assertEquals("offline", userRepository.findById(offline.getId()).get().getUsername());
+    }
+
+    @Test
+    public void exportAndRestore_archivedUser_restoredOnce() throws Exception {
+        User offline = userService.updateStatus(createUser("offline"), UserStatus.OFFLINE);
+        createUser("online");
+        userArchive.archiveOfflineSince(new Date(System.currentTimeMillis() + 1_000));
+
+        Path snapshot = directory.resolve("users.snapshot");
+        assertEquals(2, userSnapshotService.export(snapshot));
+
+        // the archived user is still in the archive when the snapshot is restored
+        userRepository.deleteAll();
+        assertEquals(2, userSnapshotService.restore(snapshot));
+
+        assertEquals("offline", userRepository.findById(offline.getId()).get().getUsername());
+        assertNull(userArchive.findById(offline.getId()));
+        assertEquals(2, userService.getUsers().size());
+
+        // and the user can log in again
+        User loggedIn = userService.checkLoginCredentials(credentials("offline", "archivePassword"));
+        assertEquals(offline.getId(), loggedIn.getId());
+    }
+}
@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void publish_writerIdle_wokenUpAndWritten() throws Exception {
+        AuditLog auditLog = new AuditLog(directory.toString(), DataSize.ofKilobytes(64), 2, 16);
+        auditLog.open();
+        try {
+            // the writer parks without a timeout once the buffer is empty, only publish() wakes it up
+            Thread.sleep(100);
+            assertTrue(auditLog.publish(new AuditEvent(AuditEvent.Type.LOGIN, 1L, 7L, "alice")));
+
+            List<AuditEvent> events = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                auditLog.replay(events::add);
+            }
+            assertEquals(1, events.size());
+            assertEquals("alice", events.get(0).getUsername());
+        }
+        finally {
+            auditLog.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditRingBufferTest {
+
+    @Test
+    public void offer_full_rejected() {
+        AuditRingBuffer<Integer> ringBuffer = new AuditRingBuffer<>(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(i));
+        }
+        assertFalse(ringBuffer.offer(4));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, ringBuffer.drain(drained::add, 10));
+        assertEquals(List.of(0, 1, 2, 3), drained);
+        assertTrue(ringBuffer.offer(4));
+    }
+
+    @Test
+    public void offer_concurrentProducers_everyElementDrainedOnce() throws InterruptedException {
+        AuditRingBuffer<Integer> ringBuffer = new AuditRingBuffer<>(1024);
+        int producers = 4;
+        int perProducer = 50_000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ringBuffer.offer(offset + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        Set<Integer> drained = new HashSet<>();
+        while (drained.size() < producers * perProducer) {
+            ringBuffer.drain(element -> assertTrue(drained.add(element)), 256);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, ringBuffer.size());
+    }
+}
@@ -0,0 +1,89 @@
+package ch.uzh.ifi.hase.soprafs24.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditSegmentLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replay_afterAppend_sameEventsInOrder() throws IOException {
+        try (AuditSegmentLog segmentLog = new AuditSegmentLog(directory, 4096, 4)) {
+            segmentLog.append(new AuditEvent(AuditEvent.Type.REGISTERED, 1L, 7L, "alice"));
+            segmentLog.append(new AuditEvent(AuditEvent.Type.LOGIN, 2L, 7L, "alice"));
+
+            List<AuditEvent> events = new ArrayList<>();
+            segmentLog.replay(events::add);
+
+            assertEquals(2, events.size());
+            assertEquals(AuditEvent.Type.REGISTERED, events.get(0).getType());
+            assertEquals(AuditEvent.Type.LOGIN, events.get(1).getType());
+            assertEquals(2L, events.get(1).getTimestamp());
+            assertEquals(7L, events.get(1).getUserId());
+            assertEquals("alice", events.get(1).getUsername());
+        }
+    }
+
+    @Test
+    public void append_segmentFull_rotatedAndOldSegmentsDeleted() throws IOException {
+        try (AuditSegmentLog segmentLog = new AuditSegmentLog(directory, 256, 3)) {
+            for (int i = 0; i < 100; i++) {
+                segmentLog.append(new AuditEvent(AuditEvent.Type.PROFILE_UPDATED, i, i, "user" + i));
+            }
+
+            assertTrue(segmentLog.getSegmentIndex() > 3);
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(3, files.count());
+            }
+
+            // only the newest events are still there, but they are complete and in order
+            List<AuditEvent> events = new ArrayList<>();
+            segmentLog.replay(events::add);
+            assertFalse(events.isEmpty());
+            assertEquals(99L, events.get(events.size() - 1).getUserId());
+            for (int i = 1; i < events.size(); i++) {
+                assertEquals(events.get(i - 1).getUserId() + 1, events.get(i).getUserId());
+            }
+        }
+    }
+
+    @Test
+    public void replay_afterRestart_previousSegmentsIncluded() throws IOException {
+        try (AuditSegmentLog segmentLog = new AuditSegmentLog(directory, 4096, 4)) {
+            segmentLog.append(new AuditEvent(AuditEvent.Type.REGISTERED, 1L, 1L, "alice"));
+        }
+        try (AuditSegmentLog segmentLog = new AuditSegmentLog(directory, 4096, 4)) {
+            segmentLog.append(new AuditEvent(AuditEvent.Type.LOGOUT, 2L, 1L, "alice"));
+
+            List<AuditEvent> events = new ArrayList<>();
+            segmentLog.replay(events::add);
+
+            assertEquals(2, events.size());
+            assertEquals(AuditEvent.Type.LOGOUT, events.get(1).getType());
+        }
+    }
+
+    @Test
+    public void open_manyRestarts_oldSegmentsDeleted() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            try (AuditSegmentLog segmentLog = new AuditSegmentLog(directory, 4096, 3)) {
+                segmentLog.append(new AuditEvent(AuditEvent.Type.LOGIN, i, i, "alice"));
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(3, files.count());
+        }
+    }
+}
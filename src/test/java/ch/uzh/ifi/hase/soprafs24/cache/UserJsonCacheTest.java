@@ -0,0 +1,147 @@
+package ch.uzh.ifi.hase.soprafs24.cache;
+
+import ch.uzh.ifi.hase.soprafs24.coalescing.UserReadCoalescer;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserJsonCacheTest {
+
+    private UserJsonCache userJsonCache;
+    private User testUser;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setup() {
+        userJsonCache = new UserJsonCache(new ObjectMapper(), 2);
+        loads = new AtomicInteger();
+
+        testUser = new User();
+        testUser.setId(1L);
+        testUser.setName("testName");
+        testUser.setUsername("testUsername");
+        testUser.setStatus(UserStatus.OFFLINE);
+    }
+
+    private User load() {
+        loads.incrementAndGet();
+        return testUser;
+    }
+
+    @Test
+    public void getProfile_repeatedReads_loadedOnce() {
+        byte[] first = userJsonCache.getProfile(1L, this::load);
+        byte[] second = userJsonCache.getProfile(1L, this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertTrue(new String(first, StandardCharsets.UTF_8).contains("\"username\":\"testUsername\""));
+    }
+
+    @Test
+    public void getProfile_afterUserChanged_reloaded() {
+        userJsonCache.getProfile(1L, this::load);
+
+        testUser.setStatus(UserStatus.ONLINE);
+        userJsonCache.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.STATUS_CHANGED, testUser));
+        byte[] json = userJsonCache.getProfile(1L, this::load);
+
+        assertEquals(2, loads.get());
+        assertTrue(new String(json, StandardCharsets.UTF_8).contains("\"status\":\"ONLINE\""));
+    }
+
+    @Test
+    public void getProfile_invalidatedWhileLoading_notCached() {
+        userJsonCache.getProfile(1L, () -> {
+            userJsonCache.invalidate(1L);
+            return load();
+        });
+        userJsonCache.getProfile(1L, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void getProfile_writeDuringCoalescedLoad_freshValueCached() throws Exception {
+        User stale = new User();
+        stale.setId(1L);
+        stale.setUsername("testUsername");
+        stale.setStatus(UserStatus.OFFLINE);
+        testUser.setStatus(UserStatus.ONLINE);
+
+        // the first load blocks until released and returns the state before the write
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserService userService = Mockito.mock(UserService.class);
+        Mockito.when(userService.getUserById(1L)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return stale;
+        }).thenReturn(testUser);
+        UserReadCoalescer userReads = new UserReadCoalescer(userService, 5_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> before = executor.submit(() ->
+                    userJsonCache.getProfile(1L, generation -> userReads.getUserById(1L, generation)));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // a write commits while the first load is running
+            userJsonCache.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.STATUS_CHANGED, testUser));
+
+            // a miss after the write does not join the earlier load
+            Future<byte[]> after = executor.submit(() ->
+                    userJsonCache.getProfile(1L, generation -> userReads.getUserById(1L, generation)));
+            assertTrue(new String(after.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8)
+                    .contains("\"status\":\"ONLINE\""));
+
+            release.countDown();
+            assertTrue(new String(before.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8)
+                    .contains("\"status\":\"OFFLINE\""));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // the outdated load was not cached
+        byte[] cached = userJsonCache.getProfile(1L, this::load);
+        assertTrue(new String(cached, StandardCharsets.UTF_8).contains("\"status\":\"ONLINE\""));
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    public void getProfile_moreUsersThanMaxEntries_bounded() {
+        for (long id = 1; id <= 5; id++) {
+            userJsonCache.getProfile(id, this::load);
+        }
+
+        assertEquals(2, userJsonCache.size());
+    }
+
+    @Test
+    public void getList_rebuiltOnlyAfterWrite() {
+        userJsonCache.getList(() -> Collections.singletonList(load()));
+        userJsonCache.getList(() -> Collections.singletonList(load()));
+        assertEquals(1, loads.get());
+
+        userJsonCache.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, testUser));
+        userJsonCache.getList(() -> Collections.singletonList(load()));
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import ch.uzh.ifi.hase.soprafs24.Application;
+import ch.uzh.ifi.hase.soprafs24.cache.UserJsonCache;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts two instances of the application on one shared database and checks
+ * that a write on one instance invalidates the cache of the other one.
+ */
+public class ClusterChangeChannelIntegrationTest {
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeEach
+    public void setup() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    private ConfigurableApplicationContext startNode() {
+        // command line arguments, application.properties would override default properties
+        return new SpringApplicationBuilder(Application.class)
+                .run("--server.port=0",
+                        "--cluster.enabled=true",
+                        "--cluster.poll-interval-ms=50",
+                        "--spring.datasource.url=jdbc:h2:mem:clustertest;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--warmup.enabled=false");
+    }
+
+    @Test
+    public void updateStatus_onOtherNode_cacheInvalidated() throws InterruptedException {
+        UserService userServiceA = nodeA.getBean(UserService.class);
+        UserService userServiceB = nodeB.getBean(UserService.class);
+        UserJsonCache cacheB = nodeB.getBean(UserJsonCache.class);
+
+        User user = new User();
+        user.setName("Cluster User");
+        user.setUsername("clusterUser");
+        user.setPassword("clusterPassword");
+        User createdUser = userServiceA.createUser(user);
+        Long id = createdUser.getId();
+
+        // node B caches the user as ONLINE
+        String cached = new String(cacheB.getProfile(id, () -> userServiceB.getUserById(id)), StandardCharsets.UTF_8);
+        assertTrue(cached.contains("\"status\":\"ONLINE\""));
+
+        // node A logs the user out
+        userServiceA.updateStatus(createdUser, UserStatus.OFFLINE);
+
+        // node B has to see the new status once it has polled the change
+        long deadline = System.currentTimeMillis() + 5_000;
+        String current;
+        do {
+            Thread.sleep(50);
+            current = new String(cacheB.getProfile(id, () -> userServiceB.getUserById(id)), StandardCharsets.UTF_8);
+        } while (!current.contains("\"status\":\"OFFLINE\"") && System.currentTimeMillis() < deadline);
+
+        assertTrue(current.contains("\"status\":\"OFFLINE\""));
+        assertNotEquals(nodeA.getBean(ClusterChangeChannel.class).getNodeId(),
+                nodeB.getBean(ClusterChangeChannel.class).getNodeId());
+    }
+}
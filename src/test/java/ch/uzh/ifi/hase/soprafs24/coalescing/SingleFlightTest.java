@@ -0,0 +1,134 @@
+package ch.uzh.ifi.hase.soprafs24.coalescing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_concurrentCallsForSameKey_shareOneLoad() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(5_000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute(1L, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "user1";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+                loads.incrementAndGet();
+                return "other";
+            })));
+        }
+        // all followers are waiting for the leader's load
+        while (singleFlight.getCoalesced() < 5) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("user1", leader.get(5, TimeUnit.SECONDS));
+        for (Future<String> follower : followers) {
+            assertEquals("user1", follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getLoads());
+        assertEquals(0, singleFlight.getInFlight());
+
+        // the result is not kept, the next call loads again
+        assertEquals("again", singleFlight.execute(1L, () -> "again"));
+        assertEquals(2, singleFlight.getLoads());
+    }
+
+    @Test
+    public void execute_loadFails_followersGetSameException() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(5_000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalArgumentException failure = new IllegalArgumentException("no such user");
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute(1L, () -> {
+            loading.countDown();
+            await(release);
+            throw failure;
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> singleFlight.execute(1L, () -> "other"));
+        while (singleFlight.getCoalesced() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        Exception leaderException = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Exception followerException = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertSame(failure, leaderException.getCause());
+        assertSame(failure, followerException.getCause());
+    }
+
+    @Test
+    public void execute_loadTooSlow_followerTimesOut() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(50);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute(1L, () -> {
+            loading.countDown();
+            await(release);
+            return "user1";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> singleFlight.execute(1L, () -> "other"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+        assertEquals(1, singleFlight.getTimeouts());
+
+        release.countDown();
+        assertEquals("user1", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void execute_differentKeys_loadedSeparately() {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(5_000);
+
+        assertEquals("user1", singleFlight.execute(1L, () -> "user1"));
+        assertEquals("user2", singleFlight.execute(2L, () -> "user2"));
+        assertEquals(2, singleFlight.getLoads());
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loads the context with the default properties, i.e. with
+ * datasource.routing.enabled=true from application.properties.
+ *
+ * @see ReadWriteDataSourceConfig
+ */
+@WebAppConfiguration
+@SpringBootTest
+public class ReadWriteDataSourceConfigIntegrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ReadWriteDataSources readWriteDataSources;
+
+    @Test
+    public void contextLoads_defaultProperties_routingDataSourceWithBothPools() {
+        assertTrue(dataSource instanceof LazyConnectionDataSourceProxy);
+        assertEquals("primary", readWriteDataSources.getPrimary().getPoolName());
+        assertEquals("replica", readWriteDataSources.getReplica().getPoolName());
+        assertTrue(readWriteDataSources.getReplica().isReadOnly());
+        assertEquals(1, new JdbcTemplate(dataSource).queryForObject("SELECT 1", Integer.class));
+    }
+}
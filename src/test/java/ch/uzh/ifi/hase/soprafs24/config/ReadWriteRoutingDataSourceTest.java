@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReadWriteRoutingDataSourceTest {
+
+    private final ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource();
+
+    @AfterEach
+    public void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    public void determineCurrentLookupKey_readOnlyTransaction_replica() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertEquals(ReadWriteRoutingDataSource.Route.REPLICA, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void determineCurrentLookupKey_readWriteTransaction_primary() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+        assertEquals(ReadWriteRoutingDataSource.Route.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+}
@@ -0,0 +1,140 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.directory.UserDirectory;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ChangeSequence;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares Tomcat's default request pool (200 platform threads) with one
+ * virtual thread per request when every repository call takes DB_LATENCY_MILLIS.
+ * Requests arrive at a fixed rate (open loop), so the latency includes the time
+ * a request waits for a free thread. The platform pool tops out at
+ * 200 / latency requests per second, beyond that the queue (and p99) grows
+ * for as long as the load lasts. The connection pool is not modelled: with
+ * virtual threads, spring.datasource.hikari.maximum-pool-size becomes the limit.
+ * Needs Java 21, run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class VirtualThreadRequestBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final long DB_LATENCY_MILLIS = 50;
+    private static final long WARMUP_MILLIS = 1_000;
+    private static final long MEASURE_MILLIS = 5_000;
+
+    @Test
+    public void getUserById_highDatabaseLatency_platformVersusVirtualThreads() throws Exception {
+        Assumptions.assumeTrue(VirtualThreads.isSupported(), "virtual threads need Java 21");
+        UserService userService = createUserService();
+
+        System.out.printf("%-10s %-10s %-12s %-10s %-10s%n", "threads", "offered/s", "completed/s", "p50 ms", "p99 ms");
+        for (int rate : new int[]{2_000, 4_000, 8_000, 16_000}) {
+            ExecutorService platform = Executors.newFixedThreadPool(PLATFORM_THREADS);
+            try {
+                run(userService, platform, rate, WARMUP_MILLIS);
+                print("platform", rate, run(userService, platform, rate, MEASURE_MILLIS));
+            }
+            finally {
+                platform.shutdownNow();
+            }
+
+            Executor virtual = VirtualThreads.newThreadPerTaskExecutor("benchmark-virtual-");
+            run(userService, virtual, rate, WARMUP_MILLIS);
+            print("virtual", rate, run(userService, virtual, rate, MEASURE_MILLIS));
+        }
+    }
+
+    private UserService createUserService() {
+        User user = new User();
+        user.setId(1L);
+        user.setName("benchmark");
+        user.setUsername("benchmark");
+
+        // a plain proxy rather than a Mockito mock, which would serialize the calls on its invocation log
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findById")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    Thread.sleep(DB_LATENCY_MILLIS);
+                    return Optional.of(user);
+                });
+        return new UserService(userRepository, Mockito.mock(PasswordHasher.class), new TokenService(60),
+                Mockito.mock(ChangeSequence.class), event -> { }, Mockito.mock(UserArchive.class),
+                Mockito.mock(UserDirectory.class),
+                Mockito.mock(PlatformTransactionManager.class, Mockito.withSettings().stubOnly()));
+    }
+
+    /**
+     * Offers requestsPerSecond requests for the given time and waits until all
+     * of them are done.
+     *
+     * @return the latencies of the requests in nanoseconds, sorted, and the total time as last element
+     */
+    private long[] run(UserService userService, Executor executor, int requestsPerSecond, long millis)
+            throws InterruptedException {
+        int requests = (int) (requestsPerSecond * millis / 1000);
+        long interval = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        long[] latencies = new long[requests + 1];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(requests);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long arrival = start + i * interval;
+            long delay = arrival - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            int request = i;
+            executor.execute(() -> {
+                try {
+                    userService.getUserById(1L);
+                }
+                catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                }
+                // measured from the scheduled arrival, a late dispatch counts as waiting
+                latencies[request] = System.nanoTime() - arrival;
+                done.countDown();
+            });
+        }
+        done.await();
+        long total = System.nanoTime() - start;
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " requests failed");
+        }
+
+        Arrays.sort(latencies, 0, requests);
+        latencies[requests] = total;
+        return latencies;
+    }
+
+    private static void print(String threads, int rate, long[] result) {
+        int requests = result.length - 1;
+        double completedPerSecond = requests * 1e9 / result[requests];
+        System.out.printf("%-10s %-10d %-12.0f %-10.1f %-10.1f%n", threads, rate, completedPerSecond,
+                result[requests / 2] / 1e6, result[(int) (requests * 0.99)] / 1e6);
+    }
+}
@@ -0,0 +1,121 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fires 2000 registrations over HTTP, 50 for each of 40 usernames, from 32
+ * threads at once. Exactly one registration per username may succeed (201),
+ * all others must be rejected with 409.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "limits.enabled=false",
+        "password.hashing.strength=4",
+        "warmup.enabled=false"
+})
+public class ConcurrentRegistrationStressTest {
+
+    private static final int USERNAMES = 40;
+    private static final int ATTEMPTS_PER_USERNAME = 50;
+    private static final int CLIENTS = 32;
+
+    @LocalServerPort
+    private int port;
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    public void setup() {
+        userRepository.deleteAll();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void createUser_collidingRegistrations_exactlyOneWinnerPerUsername() throws Exception {
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < USERNAMES * ATTEMPTS_PER_USERNAME; i++) {
+            usernames.add("stress" + (i % USERNAMES));
+        }
+        Collections.shuffle(usernames);
+
+        URI registration = URI.create("http://localhost:" + port + "/users/registration");
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+        Map<Integer, AtomicInteger> statuses = new ConcurrentHashMap<>();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (String username : usernames) {
+            results.add(clients.submit(() -> {
+                HttpRequest request = HttpRequest.newBuilder(registration)
+                        .timeout(Duration.ofSeconds(30))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Name " + username + "\",\"username\":\""
+                                + username + "\",\"password\":\"stressPassword\"}"))
+                        .build();
+                start.await();
+                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+                if (status == 201) {
+                    created.computeIfAbsent(username, u -> new AtomicInteger()).incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        clients.shutdown();
+
+        // only 201 and 409
+        assertEquals(USERNAMES, statuses.get(201).get(), "Responses " + statuses);
+        assertEquals(USERNAMES * (ATTEMPTS_PER_USERNAME - 1), statuses.get(409).get(), "Responses " + statuses);
+        assertEquals(2, statuses.size(), "Responses " + statuses);
+
+        // exactly one winner per username, and exactly that user is stored
+        Map<String, Integer> stored = new HashMap<>();
+        for (User user : userRepository.findAll()) {
+            stored.merge(user.getUsername(), 1, Integer::sum);
+        }
+        for (int i = 0; i < USERNAMES; i++) {
+            String username = "stress" + i;
+            assertEquals(1, created.get(username).get(), username);
+            assertEquals(1, stored.get(username), username);
+        }
+        assertEquals(USERNAMES, stored.size());
+    }
+}
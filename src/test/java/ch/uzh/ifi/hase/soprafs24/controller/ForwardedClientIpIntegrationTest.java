@@ -0,0 +1,63 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Logs in over HTTP through a (local, trusted) proxy that sets X-Forwarded-For.
+ * The login throttle has to count the forwarded client addresses, not the
+ * address of the proxy.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "login.throttle.ip.burst=2",
+        "login.throttle.ip.per-minute=1",
+        "login.throttle.username.burst=100",
+        "limits.enabled=false",
+        "warmup.enabled=false"
+})
+public class ForwardedClientIpIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    private int login(String username, String forwardedFor) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/users/login"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .header("X-Forwarded-For", forwardedFor)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"" + username
+                        + "\",\"password\":\"wrongPassword\"}"))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    public void login_forwardedClients_throttledPerClientIp() throws Exception {
+        assertNotEquals(429, login("forwarded1", "203.0.113.10"));
+        assertNotEquals(429, login("forwarded2", "203.0.113.10"));
+        assertEquals(429, login("forwarded3", "203.0.113.10"));
+
+        // same proxy, another client
+        assertNotEquals(429, login("forwarded4", "203.0.113.20"));
+    }
+
+    @Test
+    public void login_spoofedForwardedFor_throttledByRealClientIp() throws Exception {
+        assertNotEquals(429, login("spoofed1", "203.0.113.30"));
+        assertNotEquals(429, login("spoofed2", "203.0.113.30"));
+
+        // the client put another address in front, the proxy appended the real one
+        assertEquals(429, login("spoofed3", "198.51.100.1, 203.0.113.30"));
+    }
+}
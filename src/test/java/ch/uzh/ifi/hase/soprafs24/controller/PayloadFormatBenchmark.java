@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the payload of GET /users with 1000 users for JSON (configured like
+ * Spring Boot, i.e., dates as ISO strings) and CBOR (dates as timestamps):
+ * bytes on the wire, with and without compression, and serialization time.
+ * Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class PayloadFormatBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int ITERATIONS = 2000;
+
+    @Test
+    public void userList_bytesAndSerializationTime_perFormat() throws IOException {
+        List<UserGetDTO> users = createUsers();
+
+        ObjectMapper json = new ObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+
+        System.out.printf("%-6s %-10s %-10s %-10s %-14s %-14s%n",
+                "format", "bytes", "gzip", "deflate", "serialize us", "deserialize us");
+        report("json", json, users);
+        report("cbor", cbor, users);
+    }
+
+    private void report(String format, ObjectMapper objectMapper, List<UserGetDTO> users) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(users);
+
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(users), UserGetDTO[].class);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            objectMapper.writeValueAsBytes(users);
+        }
+        long serializeNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            objectMapper.readValue(payload, UserGetDTO[].class);
+        }
+        long deserializeNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        System.out.printf("%-6s %-10d %-10d %-10d %-14.1f %-14.1f%n", format, payload.length,
+                gzip(payload).length, deflate(payload).length, serializeNanos / 1000.0, deserializeNanos / 1000.0);
+    }
+
+    private List<UserGetDTO> createUsers() {
+        List<UserGetDTO> users = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < USERS; i++) {
+            UserGetDTO user = new UserGetDTO();
+            user.setId((long) i);
+            user.setName("Firstname Lastname " + i);
+            user.setUsername("user" + i);
+            user.setStatus(i % 3 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+            user.setCreationDate(new Date(now - i * 86_400_000L));
+            user.setBirthDate(new Date(now - (20 + i % 40) * 365L * 86_400_000L));
+            users.add(user);
+        }
+        return users;
+    }
+
+    private byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] deflate(byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(payload);
+        }
+        return out.toByteArray();
+    }
+}
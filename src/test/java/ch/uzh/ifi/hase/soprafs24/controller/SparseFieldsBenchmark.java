@@ -0,0 +1,125 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.cache.UserJsonCache;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.snapshot.UserSnapshotService;
+import ch.uzh.ifi.hase.soprafs24.snapshot.UserSnapshotWriter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Compares GET /users for 10,000 users with all fields against fields=
+ * selections: bytes on the wire (plain and gzip) and latency (avg and p99).
+ * "full" is the plain GET /users with its JSON cache invalidated before every
+ * request, i.e. entities, DTOMapper and Jackson; the fields= requests select
+ * only their columns. Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {"limits.enabled=false", "warmup.enabled=false"})
+@AutoConfigureMockMvc
+public class SparseFieldsBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int WARMUP_REQUESTS = 100;
+    private static final int REQUESTS = 300;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSnapshotService userSnapshotService;
+
+    @Autowired
+    private UserJsonCache userJsonCache;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void getAllUsers_fullVersusSparse() throws Exception {
+        createUsers();
+
+        System.out.printf("%-40s %-10s %-10s %-10s %-10s%n", "request", "bytes", "gzip", "avg ms", "p99 ms");
+        report("full", get("/users"));
+        report("fields=id,name,username,status,dates",
+                get("/users").param("fields", "id,name,username,status,creationDate,birthDate"));
+        report("fields=id,username", get("/users").param("fields", "id,username"));
+        report("fields=id", get("/users").param("fields", "id"));
+
+        userRepository.deleteAllInBatch();
+    }
+
+    private void report(String name, MockHttpServletRequestBuilder request) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            perform(request);
+        }
+        long[] latencies = new long[REQUESTS];
+        byte[] payload = null;
+        for (int i = 0; i < REQUESTS; i++) {
+            long start = System.nanoTime();
+            payload = perform(request);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-40s %-10d %-10d %-10.2f %-10.2f%n", name, payload.length, gzip(payload).length,
+                Arrays.stream(latencies).average().orElse(0) / 1e6, latencies[(int) (REQUESTS * 0.99)] / 1e6);
+    }
+
+    private byte[] perform(MockHttpServletRequestBuilder request) throws Exception {
+        // otherwise the full list would come from the cache
+        userJsonCache.invalidateAll();
+        return mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray();
+    }
+
+    private void createUsers() throws IOException {
+        userRepository.deleteAll();
+        Path snapshot = directory.resolve("users.snapshot");
+        try (UserSnapshotWriter writer = new UserSnapshotWriter(snapshot)) {
+            long now = System.currentTimeMillis();
+            for (long id = 1; id <= USERS; id++) {
+                User user = new User();
+                user.setId(id);
+                user.setName("Firstname Lastname " + id);
+                user.setUsername("user" + id);
+                user.setToken("token-" + id);
+                user.setStatus(id % 3 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+                user.setPasswordHash("$2a$10$abcdefghijklmnopqrstuv" + id);
+                user.setCreationDate(new Date(now - id * 60_000));
+                user.setBirthDate(new Date(now - (20 + id % 40) * 365L * 86_400_000L));
+                writer.write(user);
+            }
+        }
+        userSnapshotService.restore(snapshot);
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        }
+        return out.toByteArray();
+    }
+}
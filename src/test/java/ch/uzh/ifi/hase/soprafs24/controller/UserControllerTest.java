@@ -1,34 +1,55 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.cache.UserJsonCache;
+import ch.uzh.ifi.hase.soprafs24.coalescing.UserReadCoalescer;
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO; // ADDED
+import ch.uzh.ifi.hase.soprafs24.security.LoginRateLimiter;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import ch.uzh.ifi.hase.soprafs24.stats.UserStatistics;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.Date; // ADDED
 import java.text.SimpleDateFormat; // ADDED
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -39,6 +60,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * This tests if the UserController works.
  */
 @WebMvcTest(UserController.class)
+@Import({UserJsonCache.class, UserReadCoalescer.class})
 public class UserControllerTest {
 
   @Autowired
@@ -47,6 +69,21 @@ public class UserControllerTest {
   @MockBean
   private UserService userService;
 
+  @MockBean
+  private LoginRateLimiter loginRateLimiter;
+
+  @MockBean
+  private UserStatistics userStatistics;
+
+  @Autowired
+  private UserJsonCache userJsonCache;
+
+  @BeforeEach
+  public void setup() {
+    // the cache is shared by all tests, the mocked UserService never invalidates it
+    userJsonCache.invalidateAll();
+  }
+
   // THIS TEST (ALREADY EXISTING) CHECKS WHETHER A QUERY OF ALL USERS (@GetMapping("/users") IS CARRIED OUT CORRECTLY
     @Test
   public void givenUsers_whenGetUsers_thenReturnJsonArray() throws Exception {
@@ -73,6 +110,114 @@ public class UserControllerTest {
         .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())));
   }
 
+  @Test
+  public void lookupUsers_someMissing_orderedUsersAndMissingIds() throws Exception {
+    // given
+    User first = new User();
+    first.setId(3L);
+    first.setName("First");
+    first.setUsername("first");
+    first.setStatus(UserStatus.ONLINE);
+
+    User second = new User();
+    second.setId(1L);
+    second.setName("Second");
+    second.setUsername("second");
+    second.setStatus(UserStatus.OFFLINE);
+
+    Map<Long, User> usersById = new LinkedHashMap<>();
+    usersById.put(3L, first);
+    usersById.put(1L, second);
+    given(userService.getUsersByIds(Mockito.anyList())).willReturn(usersById);
+
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users").param("ids", "3,2,1");
+
+    // then -> order of the request is kept, id 2 is reported as missing
+    mockMvc.perform(getRequest).andExpect(status().isOk())
+        .andExpect(jsonPath("$.users", hasSize(2)))
+        .andExpect(jsonPath("$.users[0].id", is(3)))
+        .andExpect(jsonPath("$.users[1].id", is(1)))
+        .andExpect(jsonPath("$.missingIds", hasSize(1)))
+        .andExpect(jsonPath("$.missingIds[0]", is(2)));
+  }
+
+  @Test
+  public void getUserChanges_changedUsers_returnedWithNextPosition() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setName("Firstname Lastname");
+    user.setUsername("firstname@lastname");
+    user.setStatus(UserStatus.OFFLINE);
+    user.setChangeSeq(42L);
+    given(userService.getChangesSince(17L, 500)).willReturn(Collections.singletonList(user));
+
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users/changes").param("since", "17");
+
+    // then
+    mockMvc.perform(getRequest).andExpect(status().isOk())
+        .andExpect(jsonPath("$.users", hasSize(1)))
+        .andExpect(jsonPath("$.users[0].id", is(1)))
+        .andExpect(jsonPath("$.users[0].status", is("OFFLINE")))
+        .andExpect(jsonPath("$.nextSince", is(42)))
+        .andExpect(jsonPath("$.hasMore", is(false)));
+  }
+
+  @Test
+  public void getAllUsers_fields_onlySelectedFieldsReturned() throws Exception {
+    // given
+    Map<String, Object> user = new LinkedHashMap<>();
+    user.put("id", 1L);
+    user.put("username", "firstname@lastname");
+    given(userService.getUsers(Arrays.asList(UserField.ID, UserField.USERNAME)))
+        .willReturn(Collections.singletonList(user));
+
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users").param("fields", "id, username,id");
+
+    // then
+    mockMvc.perform(getRequest).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(1)))
+        .andExpect(jsonPath("$[0].username", is("firstname@lastname")))
+        .andExpect(jsonPath("$[0].name").doesNotExist());
+  }
+
+  @Test
+  public void getUserStats_fromCounters_noUserServiceCall() throws Exception {
+    // given
+    Map<UserStatus, Long> byStatus = new EnumMap<>(UserStatus.class);
+    byStatus.put(UserStatus.ONLINE, 2L);
+    byStatus.put(UserStatus.OFFLINE, 1L);
+    SortedMap<LocalDate, Long> registrationsPerDay = new TreeMap<>();
+    registrationsPerDay.put(LocalDate.of(2024, 3, 1), 1L);
+    registrationsPerDay.put(LocalDate.of(2024, 3, 4), 2L);
+    given(userStatistics.getTotal()).willReturn(3L);
+    given(userStatistics.getCountsByStatus()).willReturn(byStatus);
+    given(userStatistics.getRegistrationsPerDay()).willReturn(registrationsPerDay);
+
+    // then
+    mockMvc.perform(get("/users/stats")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.total", is(3)))
+        .andExpect(jsonPath("$.byStatus.ONLINE", is(2)))
+        .andExpect(jsonPath("$.byStatus.OFFLINE", is(1)))
+        .andExpect(jsonPath("$.registrationsPerDay['2024-03-01']", is(1)))
+        .andExpect(jsonPath("$.registrationsPerDay['2024-03-04']", is(2)));
+    Mockito.verifyNoInteractions(userService);
+  }
+
+  @Test
+  public void getUserProfile_unknownField_badRequest() throws Exception {
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users/1").param("fields", "id,password");
+
+    // then
+    mockMvc.perform(getRequest).andExpect(status().isBadRequest());
+    Mockito.verifyNoInteractions(userService);
+  }
+
   // THIS TEST (ALREADY EXISTING) CHECKS THE REGISTRATION FUNCTIONALITY (@PostMapping("/users/registration")
   @Test
   public void createUser_validInput_userCreated() throws Exception {
@@ -87,6 +232,7 @@ public class UserControllerTest {
     UserPostDTO userPostDTO = new UserPostDTO();
     userPostDTO.setName("Test User");
     userPostDTO.setUsername("testUsername");
+    userPostDTO.setPassword("testPassword");
 
     // NOTE TO MYSELF: Mockito.any() allows for flexible argument matching
     given(userService.createUser(Mockito.any())).willReturn(user);
@@ -213,6 +359,48 @@ public class UserControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    @Test
+    public void loginUser_wrongPassword_errorBody() throws Exception {
+        UserPostDTO userPostDTO = new UserPostDTO();
+        userPostDTO.setUsername("Michael");
+        userPostDTO.setPassword("WrongPassword");
+
+        given(userService.checkLoginCredentials(Mockito.any())).willThrow(InvalidCredentialsException.WRONG_PASSWORD);
+
+        MockHttpServletRequestBuilder postRequest = post("/users/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(userPostDTO));
+
+        // domain errors are rendered by GlobalExceptionAdvice
+        mockMvc.perform(postRequest)
+                .andExpect(status().isUnauthorized())
+                .andExpect(jsonPath("$.status", is(401)))
+                .andExpect(jsonPath("$.error", is("Unauthorized")))
+                .andExpect(jsonPath("$.message", is("Wrong password")))
+                .andExpect(jsonPath("$.path", is("/users/login")));
+    }
+
+    @Test
+    public void loginUser_throttled_tooManyRequests() throws Exception {
+        // given
+        UserPostDTO userPostDTO = new UserPostDTO();
+        userPostDTO.setName("1234");
+        userPostDTO.setUsername("Michael");
+
+        // Mock the behavior for an exceeded login rate
+        willThrow(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many login attempts"))
+                .given(loginRateLimiter).checkLoginAttempt(Mockito.any(), Mockito.any());
+
+        MockHttpServletRequestBuilder postRequest = post("/users/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(userPostDTO));
+
+        // The credentials must not be checked at all
+        mockMvc.perform(postRequest)
+                .andExpect(status().isTooManyRequests());
+        Mockito.verify(userService, Mockito.never()).checkLoginCredentials(Mockito.any());
+    }
+
     // THIS TEST (ADDED BY MYSELF) CHECKS WHETHER EXISTING USERS ARE CORRECTLY RETURNED FROM THE DB (@GetMapping("/users/{id}")
     @Test
     public void getUserProfile_existingUser_userProfileReturned() throws Exception {
@@ -240,6 +428,35 @@ public class UserControllerTest {
                 .andExpect(jsonPath("$.status", is(user.getStatus().toString())));
     }
 
+    @Test
+    public void getUserProfile_acceptCbor_cborReturned() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setName("Test User");
+        user.setUsername("testUsername");
+        user.setToken("1");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUserById(1L)).willReturn(user);
+
+        // Define method for simulating a GET request that asks for CBOR
+        MockHttpServletRequestBuilder getRequest = get("/users/{id}", 1L)
+                .accept(MediaType.APPLICATION_CBOR);
+
+        MvcResult result = mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        // Decode the binary response
+        UserGetDTO userGetDTO = new ObjectMapper(new CBORFactory())
+                .readValue(result.getResponse().getContentAsByteArray(), UserGetDTO.class);
+        assertEquals(user.getId(), userGetDTO.getId());
+        assertEquals(user.getUsername(), userGetDTO.getUsername());
+        assertEquals(user.getStatus(), userGetDTO.getStatus());
+    }
+
     // THIS TEST (ADDED BY MYSELF) CHECKS NON-EXISTING USERS THROW THE EXPECTED 404 ERROR (@GetMapping("/users/{id}")
     @Test
     public void getUserProfile_nonExistingUser_notFound() throws Exception {
@@ -0,0 +1,141 @@
+package ch.uzh.ifi.hase.soprafs24.directory;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+/**
+ * Compares an on-heap HashMap from username to id with the off-heap
+ * UsernameTable at ENTRIES usernames: time to fill, heap in use afterwards,
+ * lookup latency (avg and p99) for known and unknown usernames, and the
+ * collections (and their time) while CHURN_MILLIS of request-like garbage is
+ * allocated next to the live directory. Needs the 4 GB heap of the benchmark
+ * task, run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class UserDirectoryBenchmark {
+
+    private static final int ENTRIES = 10_000_000;
+    private static final int LOOKUPS = 1_000_000;
+    private static final long WARMUP_MILLIS = 2_000;
+    private static final long CHURN_MILLIS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void lookup_tenMillionUsernames_heapMapVersusOffHeapTable() throws Exception {
+        Random random = new Random(42);
+        String[] hits = new String[LOOKUPS];
+        String[] misses = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits[i] = "user" + random.nextInt(ENTRIES);
+            misses[i] = "unknown" + random.nextInt(ENTRIES);
+        }
+
+        System.out.printf("%-16s %-8s %-9s %-9s %-9s %-9s %-9s %-6s %-8s%n", "directory", "fill s", "heap MB",
+                "hit avg", "hit p99", "miss avg", "miss p99", "gcs", "gc ms");
+
+        long baseline = usedHeapAfterGc();
+        long start = System.nanoTime();
+        Map<String, Long> map = new HashMap<>(ENTRIES * 4 / 3 + 1);
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put("user" + i, (long) i);
+        }
+        long fillNanos = System.nanoTime() - start;
+        report("HashMap", fillNanos, usedHeapAfterGc() - baseline, username -> {
+            Long id = map.get(username);
+            return id == null ? UsernameTable.ABSENT : id;
+        }, hits, misses);
+        Reference.reachabilityFence(map);
+        map.clear();
+
+        baseline = usedHeapAfterGc();
+        start = System.nanoTime();
+        try (UsernameTable table = UsernameTable.open(directory.resolve("users.dir"), ENTRIES * 4 / 3 + 1)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                table.put("user" + i, i);
+            }
+            fillNanos = System.nanoTime() - start;
+            report("UsernameTable", fillNanos, usedHeapAfterGc() - baseline, table::get, hits, misses);
+        }
+    }
+
+    private void report(String name, long fillNanos, long heapBytes, ToLongFunction<String> lookup, String[] hits,
+                        String[] misses) {
+        long[] hitLatencies = measure(lookup, hits, true);
+        long[] missLatencies = measure(lookup, misses, false);
+        long[] gc = churn();
+        System.out.printf("%-16s %-8.1f %-9d %-9.0f %-9d %-9.0f %-9d %-6d %-8d%n", name, fillNanos / 1e9,
+                heapBytes / (1024 * 1024), Arrays.stream(hitLatencies).average().orElse(0),
+                hitLatencies[(int) (LOOKUPS * 0.99)], Arrays.stream(missLatencies).average().orElse(0),
+                missLatencies[(int) (LOOKUPS * 0.99)], gc[0], gc[1]);
+    }
+
+    /**
+     * @return the latencies of all lookups in nanoseconds, sorted
+     */
+    private long[] measure(ToLongFunction<String> lookup, String[] usernames, boolean expectHit) {
+        long deadline = System.currentTimeMillis() + WARMUP_MILLIS;
+        for (int i = 0; System.currentTimeMillis() < deadline; i = (i + 1) % usernames.length) {
+            lookup.applyAsLong(usernames[i]);
+        }
+        long[] latencies = new long[usernames.length];
+        for (int i = 0; i < usernames.length; i++) {
+            long start = System.nanoTime();
+            long id = lookup.applyAsLong(usernames[i]);
+            latencies[i] = System.nanoTime() - start;
+            if ((id != UsernameTable.ABSENT) != expectHit) {
+                throw new IllegalStateException("Wrong result for " + usernames[i]);
+            }
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Allocates short- and medium-lived garbage, like request handling does.
+     *
+     * @return the number of collections and their total time in ms meanwhile
+     */
+    private long[] churn() {
+        long[] before = gcCountAndTime();
+        Object[] survivors = new Object[100_000];
+        long deadline = System.currentTimeMillis() + CHURN_MILLIS;
+        for (int i = 0; System.currentTimeMillis() < deadline; i++) {
+            byte[] garbage = new byte[1024];
+            // every 16th allocation lives a while, so some of it is promoted
+            if ((i & 15) == 0) {
+                survivors[(i >>> 4) % survivors.length] = garbage;
+            }
+        }
+        Reference.reachabilityFence(survivors);
+        long[] after = gcCountAndTime();
+        return new long[]{after[0] - before[0], after[1] - before[1]};
+    }
+
+    private static long[] gcCountAndTime() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.directory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserDirectoryTest {
+
+    @TempDir
+    Path directory;
+
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:userdirectory;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS user");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS user_archive");
+        jdbcTemplate.execute("CREATE TABLE user (id BIGINT PRIMARY KEY, username VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE user_archive (id BIGINT PRIMARY KEY, username VARCHAR(255))");
+    }
+
+    private UserDirectory open() {
+        UserDirectory userDirectory = new UserDirectory(dataSource, true, directory.resolve("users.dir").toString(),
+                16, false, false);
+        userDirectory.afterSingletonsInstantiated();
+        return userDirectory;
+    }
+
+    @Test
+    public void isAbsent_beforeFirstRebuild_notTrusted() {
+        UserDirectory userDirectory = new UserDirectory(dataSource, true, directory.resolve("users.dir").toString(),
+                16, false, false);
+        try {
+            assertFalse(userDirectory.isAbsent("alice"));
+
+            userDirectory.afterSingletonsInstantiated();
+            assertTrue(userDirectory.isAbsent("alice"));
+        }
+        finally {
+            userDirectory.close();
+        }
+    }
+
+    @Test
+    public void afterSingletonsInstantiated_databaseChangedSinceLastRun_rebuilt() {
+        jdbcTemplate.update("INSERT INTO user (id, username) VALUES (1, 'alice')");
+        UserDirectory userDirectory = open();
+        assertFalse(userDirectory.isAbsent("alice"));
+        userDirectory.close();
+
+        // same number of users and same highest id, e.g. another database behind the same file
+        jdbcTemplate.update("DELETE FROM user");
+        jdbcTemplate.update("INSERT INTO user_archive (id, username) VALUES (1, 'bob')");
+        userDirectory = open();
+        try {
+            assertFalse(userDirectory.isAbsent("bob"));
+            assertTrue(userDirectory.isAbsent("alice"));
+        }
+        finally {
+            userDirectory.close();
+        }
+    }
+}
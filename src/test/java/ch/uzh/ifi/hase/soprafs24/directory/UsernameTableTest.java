@@ -0,0 +1,80 @@
+package ch.uzh.ifi.hase.soprafs24.directory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UsernameTableTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void put_newAndExistingUsernames_found() throws Exception {
+        try (UsernameTable table = UsernameTable.open(directory.resolve("users.dir"), 16)) {
+            table.put("alice", 1);
+            table.put("bob", 2);
+            table.put("alice", 3);
+            table.putIfAbsent("bob", 4);
+
+            assertEquals(3, table.get("alice"));
+            assertEquals(2, table.get("bob"));
+            assertEquals(UsernameTable.ABSENT, table.get("carol"));
+            assertEquals(2, table.size());
+        }
+    }
+
+    @Test
+    public void put_beyondCapacity_grows() throws Exception {
+        try (UsernameTable table = UsernameTable.open(directory.resolve("users.dir"), 16)) {
+            // long usernames also fill the key heap before the slots
+            for (int i = 0; i < 10_000; i++) {
+                table.put((i % 2 == 0 ? "user" : "a-rather-long-username-") + i, i);
+            }
+
+            assertEquals(10_000, table.size());
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals(i, table.get((i % 2 == 0 ? "user" : "a-rather-long-username-") + i));
+            }
+            assertEquals(UsernameTable.ABSENT, table.get("user1"));
+        }
+    }
+
+    @Test
+    public void open_afterClose_emptyTable() throws Exception {
+        Path file = directory.resolve("users.dir");
+        try (UsernameTable table = UsernameTable.open(file, 16)) {
+            table.put("alice", 1);
+        }
+
+        try (UsernameTable table = UsernameTable.open(file, 16)) {
+            assertEquals(0, table.size());
+            assertEquals(UsernameTable.ABSENT, table.get("alice"));
+        }
+    }
+
+    @Test
+    public void open_alreadyOpen_throwsException() throws Exception {
+        Path file = directory.resolve("users.dir");
+        try (UsernameTable table = UsernameTable.open(file, 16)) {
+            assertThrows(IOException.class, () -> UsernameTable.open(file, 16));
+        }
+    }
+
+    @Test
+    public void clear_removesAllEntries() throws Exception {
+        try (UsernameTable table = UsernameTable.open(directory.resolve("users.dir"), 16)) {
+            table.put("alice", 1);
+            table.clear();
+
+            assertEquals(0, table.size());
+            assertEquals(UsernameTable.ABSENT, table.get("alice"));
+            table.put("alice", 2);
+            assertEquals(2, table.get("alice"));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Compares the throughput of the expected failure paths (404, 401, 409) with a
+ * fresh ResponseStatusException per failure, as UserService used to throw
+ * them, against the preallocated stackless domain exceptions. The exceptions
+ * are thrown STACK_DEPTH frames deep, since filling in the stack trace is what
+ * makes them expensive and a request runs well below the servlet container,
+ * filters and proxies. Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class DomainExceptionBenchmark {
+
+    private static final int STACK_DEPTH = 100;
+    private static final long WARMUP_MILLIS = 1_000;
+    private static final long MEASURE_MILLIS = 3_000;
+
+    private static final String BASE_ERROR_MESSAGE = "The %s provided %s not unique. Therefore, the user could not be created!";
+
+    @Test
+    public void failurePaths_throughput() {
+        System.out.printf("%-40s %-14s%n", "failure", "throws/s");
+        report("404 new ResponseStatusException", () -> {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+        });
+        report("404 UserNotFoundException", () -> {
+            throw UserNotFoundException.USER_NOT_FOUND;
+        });
+        report("401 new ResponseStatusException", () -> {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Wrong password");
+        });
+        report("401 InvalidCredentialsException", () -> {
+            throw InvalidCredentialsException.WRONG_PASSWORD;
+        });
+        report("409 new ResponseStatusException", () -> {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(BASE_ERROR_MESSAGE, "username", "is"));
+        });
+        report("409 UserAlreadyExistsException", () -> {
+            throw UserAlreadyExistsException.USERNAME_TAKEN;
+        });
+    }
+
+    private static void report(String name, Runnable failure) {
+        runFor(failure, WARMUP_MILLIS);
+        long failures = runFor(failure, MEASURE_MILLIS);
+        System.out.printf("%-40s %-14.0f%n", name, failures * 1000.0 / MEASURE_MILLIS);
+    }
+
+    private static long runFor(Runnable failure, long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        long failures = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1_000; i++) {
+                failures += failAt(STACK_DEPTH, failure);
+            }
+        }
+        return failures;
+    }
+
+    private static int failAt(int depth, Runnable failure) {
+        if (depth > 0) {
+            return failAt(depth - 1, failure);
+        }
+        try {
+            failure.run();
+            return 0;
+        }
+        catch (RuntimeException e) {
+            return 1;
+        }
+    }
+}
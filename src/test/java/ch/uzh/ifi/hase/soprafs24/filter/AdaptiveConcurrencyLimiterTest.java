@@ -0,0 +1,130 @@
+package ch.uzh.ifi.hase.soprafs24.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Runs one full sampling window, refilling the limit whenever it drained, the
+     * first failures requests of it failing. The clock only moves before the last
+     * release, so that one closes the window.
+     */
+    private void runWindow(AdaptiveConcurrencyLimiter limiter, long latencyNanos, int failures) {
+        int released = 0;
+        while (released < AdaptiveConcurrencyLimiter.MIN_WINDOW_SAMPLES || limiter.getInFlight() > 0) {
+            if (limiter.getInFlight() == 0) {
+                while (limiter.tryAcquire()) {
+                    // fill up to the limit
+                }
+            }
+            if (released >= AdaptiveConcurrencyLimiter.MIN_WINDOW_SAMPLES - 1 && limiter.getInFlight() == 1) {
+                clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            }
+            limiter.release(latencyNanos, released < failures);
+            released++;
+        }
+    }
+
+    @Test
+    public void tryAcquire_limitReached_rejected() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.9, 2.0);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void release_fastWindowAtLimit_limitIncreasesOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.9, 2.0, clock::get);
+
+        runWindow(limiter, 1_000_000, 0);
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void release_windowNotClosed_limitUnchanged() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.9, 2.0, clock::get);
+
+        // enough samples, but the window is not long enough yet
+        for (int i = 0; i < AdaptiveConcurrencyLimiter.MIN_WINDOW_SAMPLES; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(1_000_000, true);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void release_slowWindow_limitDecreasesOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10, 0.5, 2.0, clock::get);
+
+        // establish a baseline of 1ms
+        runWindow(limiter, 1_000_000, 0);
+        int limitBefore = limiter.getLimit();
+
+        // a whole window of requests taking 10 times as long signals queueing, but only backs off once
+        runWindow(limiter, 10_000_000, 0);
+
+        assertEquals(limitBefore / 2, limiter.getLimit());
+    }
+
+    @Test
+    public void release_steadyMixOfFastAndSlowRequests_limitKept() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8, 0.9, 2.0, clock::get);
+
+        // e.g. the auth bulkhead: unknown usernames return right away, real logins hash for ~100ms
+        for (int window = 0; window < 50; window++) {
+            for (int i = 0; i < AdaptiveConcurrencyLimiter.MIN_WINDOW_SAMPLES; i++) {
+                assertTrue(limiter.tryAcquire());
+                if (i == AdaptiveConcurrencyLimiter.MIN_WINDOW_SAMPLES - 1) {
+                    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+                }
+                limiter.release(i % 2 == 0 ? 1_000_000 : 100_000_000, false);
+            }
+        }
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void release_singleFailureInWindow_limitKept() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 4, 0.5, 2.0, clock::get);
+
+        runWindow(limiter, 1_000_000, 1);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void release_failingWindows_limitNeverBelowMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 2, 10, 0.5, 2.0, clock::get);
+
+        for (int window = 0; window < 5; window++) {
+            runWindow(limiter, 1_000_000, AdaptiveConcurrencyLimiter.MIN_WINDOW_SAMPLES);
+        }
+
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void classify_userEndpoints_correctBulkhead() {
+        assertEquals(Bulkhead.LIST, Bulkhead.classify("GET", "/users"));
+        assertEquals(Bulkhead.READ, Bulkhead.classify("GET", "/users/1"));
+        assertEquals(Bulkhead.WRITE, Bulkhead.classify("POST", "/users/registration"));
+        assertEquals(Bulkhead.WRITE, Bulkhead.classify("PUT", "/users/1"));
+        assertEquals(Bulkhead.AUTH, Bulkhead.classify("POST", "/users/login"));
+        assertEquals(Bulkhead.AUTH, Bulkhead.classify("POST", "/users/logout"));
+        assertNull(Bulkhead.classify("GET", "/h2-console"));
+    }
+}
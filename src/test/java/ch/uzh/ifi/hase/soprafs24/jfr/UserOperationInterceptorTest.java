@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs24.jfr;
+
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.directory.UserDirectory;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.repository.ChangeSequence;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserOperationInterceptorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void invoke_recordingActive_eventPerOperation() throws Exception {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("recorded");
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+
+        ProxyFactory proxyFactory = new ProxyFactory(new UserService(userRepository, Mockito.mock(PasswordHasher.class),
+                new TokenService(60), Mockito.mock(ChangeSequence.class), event -> { },
+                Mockito.mock(UserArchive.class), Mockito.mock(UserDirectory.class),
+                Mockito.mock(PlatformTransactionManager.class, Mockito.withSettings().stubOnly())));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new UserOperationInterceptor());
+        UserService userService = (UserService) proxyFactory.getProxy();
+
+        Path file = directory.resolve("operations.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(UserOperationEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            userService.getUserById(7L);
+            assertThrows(UserNotFoundException.class, () -> userService.getUserById(8L));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("soprafs24.UserOperation"))
+                .collect(Collectors.toList());
+        assertEquals(2, events.size());
+        assertEquals("profile.read", events.get(0).getString("operation"));
+        assertEquals(7L, events.get(0).getLong("userId"));
+        assertEquals("OK", events.get(0).getString("outcome"));
+        assertEquals(8L, events.get(1).getLong("userId"));
+        assertEquals("UserNotFoundException", events.get(1).getString("outcome"));
+    }
+}
@@ -1,5 +1,6 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import org.junit.jupiter.api.Test;
@@ -7,8 +8,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @DataJpaTest
 public class UserRepositoryIntegrationTest {
@@ -41,4 +47,31 @@ public class UserRepositoryIntegrationTest {
     assertEquals(found.getToken(), user.getToken());
     assertEquals(found.getStatus(), user.getStatus());
   }
+
+  @Test
+  public void findFieldsById_selectedFields_onlySelectedFieldsInOrder() {
+    // given
+    User user = new User();
+    user.setName("Firstname Lastname");
+    user.setUsername("firstname@lastname");
+    user.setStatus(UserStatus.OFFLINE);
+    user.setToken("1");
+
+    entityManager.persist(user);
+    entityManager.flush();
+    entityManager.clear();
+
+    // when
+    List<UserField> fields = Arrays.asList(UserField.USERNAME, UserField.ID);
+    Map<String, Object> found = userRepository.findFieldsById(user.getId(), fields).orElseThrow();
+    List<Map<String, Object>> all = userRepository.findAllFields(fields);
+
+    // then
+    assertEquals(Arrays.asList("username", "id"), Arrays.asList(found.keySet().toArray()));
+    assertEquals(user.getUsername(), found.get("username"));
+    assertEquals(user.getId(), found.get("id"));
+    assertEquals(1, all.size());
+    assertEquals(found, all.get(0));
+    assertTrue(userRepository.findFieldsById(user.getId() + 1, fields).isEmpty());
+  }
 }
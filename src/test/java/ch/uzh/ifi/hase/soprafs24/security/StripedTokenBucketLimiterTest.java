@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedTokenBucketLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void tryAcquire_burstExceeded_rejected() {
+        StripedTokenBucketLimiter limiter = new StripedTokenBucketLimiter(4, 3, 60, 100, now::get);
+
+        assertTrue(limiter.tryAcquire("alice"));
+        assertTrue(limiter.tryAcquire("alice"));
+        assertTrue(limiter.tryAcquire("alice"));
+        assertFalse(limiter.tryAcquire("alice"));
+
+        // other keys have their own bucket
+        assertTrue(limiter.tryAcquire("bob"));
+    }
+
+    @Test
+    public void tryAcquire_afterRefill_allowedAgain() {
+        StripedTokenBucketLimiter limiter = new StripedTokenBucketLimiter(4, 1, 60, 100, now::get);
+
+        assertTrue(limiter.tryAcquire("alice"));
+        assertFalse(limiter.tryAcquire("alice"));
+
+        // 60 per minute -> one token per second
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire("alice"));
+    }
+
+    @Test
+    public void tryAcquire_idleBuckets_evicted() {
+        StripedTokenBucketLimiter limiter = new StripedTokenBucketLimiter(1, 1, 60, 100, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("user" + i);
+        }
+        assertEquals(10, limiter.size());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        limiter.evictIdle();
+
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void tryAcquire_manyKeys_sizeBounded() {
+        StripedTokenBucketLimiter limiter = new StripedTokenBucketLimiter(2, 1, 60, 10, now::get);
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("user" + i);
+        }
+
+        assertTrue(limiter.size() <= 10);
+    }
+}
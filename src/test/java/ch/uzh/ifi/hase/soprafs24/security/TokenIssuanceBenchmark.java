@@ -0,0 +1,72 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Measures how many tokens per second UUID.randomUUID() (one shared
+ * SecureRandom) and TokenService (one SecureRandom per thread) issue with an
+ * increasing number of concurrent registrations (i.e., request threads).
+ * Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class TokenIssuanceBenchmark {
+
+    private static final long WARMUP_MILLIS = 1_000;
+    private static final long MEASURE_MILLIS = 3_000;
+
+    @Test
+    public void tokensPerSecond_perThreadCount() throws Exception {
+        TokenService tokenService = new TokenService(60);
+
+        System.out.printf("%-10s %-20s %-20s%n", "threads", "UUID tokens/s", "TokenService tokens/s");
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            double uuid = tokensPerSecond(threads, () -> UUID.randomUUID().toString());
+            double perThread = tokensPerSecond(threads, tokenService::newToken);
+            System.out.printf("%-10d %-20.0f %-20.0f%n", threads, uuid, perThread);
+        }
+    }
+
+    private static double tokensPerSecond(int threads, Supplier<String> tokens) throws Exception {
+        runFor(threads, tokens, WARMUP_MILLIS);
+        return runFor(threads, tokens, MEASURE_MILLIS) * 1000.0 / MEASURE_MILLIS;
+    }
+
+    private static long runFor(int threads, Supplier<String> tokens, long millis) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(clients.submit(() -> {
+                long count = 0;
+                while (running.get()) {
+                    if (tokens.get() != null) {
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+
+        Thread.sleep(millis);
+        running.set(false);
+
+        long total = 0;
+        for (Future<Long> result : results) {
+            total += result.get();
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        return total;
+    }
+}
@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenServiceTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private final TokenService tokenService = new TokenService(TimeUnit.MINUTES.toMillis(10), now::get);
+
+    @Test
+    public void newToken_urlSafeAndUnique() {
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String token = tokenService.newToken();
+            assertEquals(32, token.length());
+            assertTrue(token.matches("[A-Za-z0-9_-]+"));
+            assertTrue(tokens.add(token));
+        }
+    }
+
+    @Test
+    public void issue_expiresAfterTtl() {
+        User user = new User();
+        tokenService.issue(user);
+
+        assertNotNull(user.getToken());
+        assertEquals(now.get() + TimeUnit.MINUTES.toMillis(10), user.getTokenExpiresAt().getTime());
+    }
+
+    @Test
+    public void issue_rotatesToken() {
+        User user = new User();
+        tokenService.issue(user);
+        String oldToken = user.getToken();
+
+        tokenService.issue(user);
+
+        assertNotEquals(oldToken, user.getToken());
+    }
+
+    @Test
+    public void expire_expiresNow() {
+        User user = new User();
+        tokenService.issue(user);
+
+        now.addAndGet(1000);
+        tokenService.expire(user);
+
+        assertEquals(now.get(), user.getTokenExpiresAt().getTime());
+    }
+}
@@ -0,0 +1,204 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AppenderBase;
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.directory.UserDirectory;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ChangeSequence;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the latency of UserService.updateUser (which logs one DEBUG event
+ * per call) with 16 concurrent clients, for log sinks of different speeds.
+ * "sync" writes to the sink on the request thread, like a plain console
+ * appender, "async" goes through the bounded queue of logback-spring.xml.
+ * With the queue the latency stays the same however slow the sink is, the
+ * events the sink cannot keep up with are dropped. Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class LoggingLatencyBenchmark {
+
+    private static final int CLIENTS = 16;
+    private static final long WARMUP_MILLIS = 1_000;
+    private static final long MEASURE_MILLIS = 3_000;
+    private static final int MAX_SAMPLES_PER_CLIENT = 2_000_000;
+
+    @Test
+    public void updateUser_slowLogSink_syncVersusAsync() throws Exception {
+        UserService userService = createUserService();
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        Logger logger = context.getLogger(UserService.class);
+        Level level = logger.getLevel();
+        boolean additive = logger.isAdditive();
+        logger.setLevel(Level.DEBUG);
+        logger.setAdditive(false);
+
+        System.out.printf("%-8s %-10s %-12s %-10s %-10s %-10s%n", "mode", "sink us", "calls/s", "p50 us", "p99 us", "dropped");
+        try {
+            for (long sinkMicros : new long[]{0, 20, 200}) {
+                for (boolean async : new boolean[]{false, true}) {
+                    SlowSink sink = new SlowSink(sinkMicros);
+                    sink.setContext(context);
+                    sink.start();
+                    Appender<ILoggingEvent> appender = async ? asyncAppender(context, sink) : sink;
+                    logger.addAppender(appender);
+                    try {
+                        runFor(userService, WARMUP_MILLIS);
+                        long logged = sink.events.get();
+                        long[] latencies = runFor(userService, MEASURE_MILLIS);
+                        appender.stop();
+
+                        long delivered = sink.events.get() - logged;
+                        System.out.printf("%-8s %-10d %-12.0f %-10.1f %-10.1f %-10d%n", async ? "async" : "sync",
+                                sinkMicros, latencies.length * 1000.0 / MEASURE_MILLIS,
+                                latencies[latencies.length / 2] / 1e3,
+                                latencies[(int) (latencies.length * 0.99)] / 1e3,
+                                Math.max(0, latencies.length - delivered));
+                    }
+                    finally {
+                        logger.detachAppender(appender);
+                        sink.stop();
+                    }
+                }
+            }
+        }
+        finally {
+            logger.setLevel(level);
+            logger.setAdditive(additive);
+        }
+    }
+
+    private static AsyncAppender asyncAppender(LoggerContext context, Appender<ILoggingEvent> sink) {
+        // same settings as logback-spring.xml
+        AsyncAppender appender = new AsyncAppender();
+        appender.setContext(context);
+        appender.setQueueSize(8192);
+        appender.setDiscardingThreshold(1638);
+        appender.setNeverBlock(false);
+        appender.setIncludeCallerData(false);
+        appender.addAppender(sink);
+        appender.start();
+        return appender;
+    }
+
+    private UserService createUserService() {
+        User user = new User();
+        user.setId(1L);
+        user.setName("benchmark");
+        user.setUsername("benchmark");
+
+        // a plain proxy rather than a Mockito mock, which would serialize the calls on its invocation log
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findById":
+                            return Optional.of(user);
+                        case "save":
+                            return args[0];
+                        case "flush":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        ChangeSequence changeSequence = Mockito.mock(ChangeSequence.class, Mockito.withSettings().stubOnly());
+        return new UserService(userRepository, Mockito.mock(PasswordHasher.class), new TokenService(60),
+                changeSequence, event -> { }, Mockito.mock(UserArchive.class), Mockito.mock(UserDirectory.class),
+                Mockito.mock(PlatformTransactionManager.class, Mockito.withSettings().stubOnly()));
+    }
+
+    /**
+     * @return the latencies of all calls in nanoseconds, sorted
+     */
+    private long[] runFor(UserService userService, long millis) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(clients.submit(() -> {
+                User update = new User();
+                update.setId(1L);
+                long[] samples = new long[MAX_SAMPLES_PER_CLIENT];
+                int count = 0;
+                while (running.get() && count < samples.length) {
+                    long start = System.nanoTime();
+                    userService.updateUser(update);
+                    samples[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(samples, count);
+            }));
+        }
+        Thread.sleep(millis);
+        running.set(false);
+
+        List<long[]> perClient = new ArrayList<>();
+        int total = 0;
+        for (Future<long[]> result : results) {
+            perClient.add(result.get());
+            total += perClient.get(perClient.size() - 1).length;
+        }
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.SECONDS);
+
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (long[] samples : perClient) {
+            System.arraycopy(samples, 0, latencies, offset, samples.length);
+            offset += samples.length;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Stands in for a console or pipe that takes sinkMicros per event. Like
+     * the console appender, it writes one event at a time.
+     */
+    private static class SlowSink extends AppenderBase<ILoggingEvent> {
+
+        private final long sinkNanos;
+        private final AtomicLong events = new AtomicLong();
+
+        SlowSink(long sinkMicros) {
+            this.sinkNanos = TimeUnit.MICROSECONDS.toNanos(sinkMicros);
+        }
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            event.getFormattedMessage();
+            if (sinkNanos > 0) {
+                long end = System.nanoTime() + sinkNanos;
+                while (System.nanoTime() < end) {
+                    LockSupport.parkNanos(end - System.nanoTime());
+                }
+            }
+            events.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.directory.UserDirectory;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ChangeSequence;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the login throughput of UserService for different bcrypt work
+ * factors, with 32 concurrent clients (i.e., request threads) and the
+ * repository mocked out. Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+public class LoginThroughputBenchmark {
+
+    private static final int CLIENTS = 32;
+    private static final long WARMUP_MILLIS = 1_000;
+    private static final long MEASURE_MILLIS = 5_000;
+
+    @Test
+    public void loginThroughput_perWorkFactor() throws Exception {
+        System.out.printf("%-12s %-12s %-12s%n", "work factor", "logins/s", "avg ms");
+        for (int strength : new int[]{4, 6, 8, 10, 12}) {
+            PasswordHasher passwordHasher = new PasswordHasher(strength, 0, CLIENTS, 60_000);
+            try {
+                UserService userService = createUserService(passwordHasher);
+                runFor(userService, WARMUP_MILLIS);
+                long logins = runFor(userService, MEASURE_MILLIS);
+
+                double perSecond = logins * 1000.0 / MEASURE_MILLIS;
+                System.out.printf("%-12d %-12.1f %-12.2f%n", strength, perSecond, CLIENTS * 1000.0 / perSecond);
+            }
+            finally {
+                passwordHasher.shutdown();
+            }
+        }
+    }
+
+    private UserService createUserService(PasswordHasher passwordHasher) {
+        User user = new User();
+        user.setId(1L);
+        user.setName("benchmark");
+        user.setUsername("benchmark");
+        user.setPasswordHash(passwordHasher.hash("benchmarkPassword"));
+
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findByUsername("benchmark")).thenReturn(user);
+        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        return new UserService(userRepository, passwordHasher, new TokenService(60),
+                Mockito.mock(ChangeSequence.class), event -> { }, Mockito.mock(UserArchive.class),
+                Mockito.mock(UserDirectory.class),
+                Mockito.mock(PlatformTransactionManager.class, Mockito.withSettings().stubOnly()));
+    }
+
+    private long runFor(UserService userService, long millis) throws Exception {
+        UserPostDTO credentials = new UserPostDTO();
+        credentials.setUsername("benchmark");
+        credentials.setPassword("benchmarkPassword");
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(clients.submit(() -> {
+                long count = 0;
+                while (running.get()) {
+                    userService.checkLoginCredentials(credentials);
+                    count++;
+                }
+                return count;
+            }));
+        }
+
+        Thread.sleep(millis);
+        running.set(false);
+
+        long total = 0;
+        for (Future<Long> result : results) {
+            total += result.get();
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        return total;
+    }
+}
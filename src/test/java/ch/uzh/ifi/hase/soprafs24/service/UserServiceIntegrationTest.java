@@ -2,14 +2,18 @@ package ch.uzh.ifi.hase.soprafs24.service;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserAlreadyExistsException;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.web.WebAppConfiguration;
-import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,6 +46,7 @@ public class UserServiceIntegrationTest {
     User testUser = new User();
     testUser.setName("testName");
     testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
 
     // when
     User createdUser = userService.createUser(testUser);
@@ -52,6 +57,26 @@ public class UserServiceIntegrationTest {
     assertEquals(testUser.getUsername(), createdUser.getUsername());
     assertNotNull(createdUser.getToken());
     assertEquals(UserStatus.ONLINE, createdUser.getStatus());
+    assertNotNull(createdUser.getPasswordHash());
+    assertNotEquals("testPassword", createdUser.getPasswordHash());
+  }
+
+  @Test
+  public void checkLoginCredentials_correctPassword_success() {
+    User testUser = new User();
+    testUser.setName("testName");
+    testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
+    userService.createUser(testUser);
+
+    UserPostDTO credentials = new UserPostDTO();
+    credentials.setUsername("testUsername");
+    credentials.setPassword("testPassword");
+
+    assertEquals("testUsername", userService.checkLoginCredentials(credentials).getUsername());
+
+    credentials.setPassword("wrongPassword");
+    assertThrows(InvalidCredentialsException.class, () -> userService.checkLoginCredentials(credentials));
   }
 
   @Test
@@ -61,6 +86,7 @@ public class UserServiceIntegrationTest {
     User testUser = new User();
     testUser.setName("testName");
     testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
     User createdUser = userService.createUser(testUser);
 
     // attempt to create second user with same username
@@ -69,8 +95,42 @@ public class UserServiceIntegrationTest {
     // change the name but forget about the username
     testUser2.setName("testName2");
     testUser2.setUsername("testUsername");
+    testUser2.setPassword("testPassword");
 
     // check that an error is thrown
-    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser2));
+    assertThrows(UserAlreadyExistsException.class, () -> userService.createUser(testUser2));
+  }
+
+  @Test
+  public void getChangesSince_afterStatusChange_returnsOnlyChangedUser() {
+    User first = new User();
+    first.setName("firstName");
+    first.setUsername("firstUsername");
+    first.setPassword("testPassword");
+    first = userService.createUser(first);
+
+    User second = new User();
+    second.setName("secondName");
+    second.setUsername("secondUsername");
+    second.setPassword("testPassword");
+    second = userService.createUser(second);
+
+    // a fresh client gets both users, oldest change first
+    List<User> changes = userService.getChangesSince(0, 10);
+    assertEquals(2, changes.size());
+    assertEquals("firstUsername", changes.get(0).getUsername());
+    assertEquals("secondUsername", changes.get(1).getUsername());
+    long since = changes.get(1).getChangeSeq();
+
+    assertTrue(userService.getChangesSince(since, 10).isEmpty());
+
+    // logout flips the status, only that user is synced again
+    userService.updateStatus(first, UserStatus.OFFLINE);
+
+    changes = userService.getChangesSince(since, 10);
+    assertEquals(1, changes.size());
+    assertEquals("firstUsername", changes.get(0).getUsername());
+    assertEquals(UserStatus.OFFLINE, changes.get(0).getStatus());
+    assertTrue(changes.get(0).getChangeSeq() > since);
   }
 }
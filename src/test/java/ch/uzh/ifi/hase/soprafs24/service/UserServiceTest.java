@@ -1,16 +1,42 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.constant.UserField;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.directory.UserDirectory;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserAlreadyExistsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.repository.ChangeSequence;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenService;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserServiceTest {
@@ -18,6 +44,27 @@ public class UserServiceTest {
   @Mock
   private UserRepository userRepository;
 
+  @Mock
+  private PasswordHasher passwordHasher;
+
+  @Spy
+  private TokenService tokenService = new TokenService(60);
+
+  @Mock
+  private ChangeSequence changeSequence;
+
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
+
+  @Mock
+  private UserArchive userArchive;
+
+  @Mock
+  private UserDirectory userDirectory;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
   @InjectMocks
   private UserService userService;
 
@@ -28,14 +75,22 @@ public class UserServiceTest {
     MockitoAnnotations.openMocks(this);
 
     // given
-    testUser = new User();
+    testUser = newTestUser();
     testUser.setId(1L);
-    testUser.setName("testName");
-    testUser.setUsername("testUsername");
 
     // when -> any object is being save in the userRepository -> return the dummy
     // testUser
     Mockito.when(userRepository.save(Mockito.any())).thenReturn(testUser);
+    Mockito.when(passwordHasher.hash(Mockito.any())).thenReturn("hash");
+  }
+
+  // createUser drops the raw password of the given user, a second registration needs a new one
+  private static User newTestUser() {
+    User user = new User();
+    user.setName("testName");
+    user.setUsername("testUsername");
+    user.setPassword("testPassword");
+    return user;
   }
 
   @Test
@@ -52,6 +107,164 @@ public class UserServiceTest {
     assertEquals(testUser.getUsername(), createdUser.getUsername());
     assertNotNull(createdUser.getToken());
     assertEquals(UserStatus.ONLINE, createdUser.getStatus());
+    assertNotNull(createdUser.getCreationDate());
+    assertEquals("hash", createdUser.getPasswordHash());
+    assertNull(createdUser.getPassword());
+  }
+
+  @Test
+  public void createUser_validInputs_hashedBetweenTransactions() {
+    userService.createUser(testUser);
+
+    // the uniqueness check and the insert run in their own transactions, bcrypt in neither
+    InOrder inOrder = Mockito.inOrder(transactionManager, userRepository, passwordHasher);
+    inOrder.verify(transactionManager).getTransaction(Mockito.any());
+    inOrder.verify(userRepository).findByName("testName");
+    inOrder.verify(transactionManager).commit(Mockito.any());
+    inOrder.verify(passwordHasher).hash("testPassword");
+    inOrder.verify(transactionManager).getTransaction(Mockito.any());
+    inOrder.verify(userRepository).save(Mockito.any());
+    inOrder.verify(transactionManager).commit(Mockito.any());
+  }
+
+  @Test
+  public void createUser_missingPassword_throwsException() {
+    testUser.setPassword(null);
+
+    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser));
+    Mockito.verify(userRepository, Mockito.never()).save(Mockito.any());
+  }
+
+  @Test
+  public void createUser_missingUsername_badRequestBeforeAnyLookup() {
+    testUser.setUsername(null);
+
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.createUser(testUser));
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    Mockito.verify(userRepository, Mockito.never()).findByName(Mockito.any());
+    Mockito.verify(userRepository, Mockito.never()).save(Mockito.any());
+  }
+
+  @Test
+  public void createUser_uniqueConstraintViolated_throwsConflict() {
+    // another instance registered the username between the check and the insert
+    Mockito.doThrow(new DataIntegrityViolationException("unique constraint",
+        new ConstraintViolationException("duplicate", null,
+            "\"PUBLIC.UK_USER_USERNAME_INDEX_2 ON PUBLIC.USER(USERNAME) VALUES 1\"")))
+        .when(userRepository).flush();
+
+    UserAlreadyExistsException exception = assertThrows(UserAlreadyExistsException.class,
+        () -> userService.createUser(testUser));
+    assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+
+    // the reservation has been released, the next attempt gets through to the database again
+    Mockito.doNothing().when(userRepository).flush();
+    assertNotNull(userService.createUser(newTestUser()));
+  }
+
+  @Test
+  public void createUser_otherConstraintViolated_notReportedAsTaken() {
+    // e.g. a duplicate token, not the username
+    DataIntegrityViolationException violation = new DataIntegrityViolationException("unique constraint",
+        new ConstraintViolationException("duplicate", null,
+            "\"PUBLIC.UK_GBMEXHEQ0C8T8TW7OIFVBQQCA_INDEX_2 ON PUBLIC.USER(TOKEN) VALUES 1\""));
+    Mockito.doThrow(violation).when(userRepository).flush();
+
+    assertSame(violation, assertThrows(DataIntegrityViolationException.class,
+        () -> userService.createUser(testUser)));
+  }
+
+  @Test
+  public void checkLoginCredentials_wrongPassword_throwsException() {
+    testUser.setPasswordHash("hash");
+    Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+    Mockito.when(passwordHasher.matches("wrongPassword", "hash")).thenReturn(false);
+
+    UserPostDTO credentials = new UserPostDTO();
+    credentials.setUsername("testUsername");
+    credentials.setPassword("wrongPassword");
+
+    assertThrows(InvalidCredentialsException.class, () -> userService.checkLoginCredentials(credentials));
+  }
+
+  @Test
+  public void checkLoginCredentials_outdatedWorkFactor_rehashed() {
+    testUser.setPasswordHash("oldHash");
+    Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+    Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+    Mockito.when(passwordHasher.matches("testPassword", "oldHash")).thenReturn(true);
+    Mockito.when(passwordHasher.needsRehash("oldHash")).thenReturn(true);
+    Mockito.when(passwordHasher.hash("testPassword")).thenReturn("newHash");
+
+    UserPostDTO credentials = new UserPostDTO();
+    credentials.setUsername("testUsername");
+    credentials.setPassword("testPassword");
+
+    User user = userService.checkLoginCredentials(credentials);
+
+    assertEquals("newHash", user.getPasswordHash());
+  }
+
+  @Test
+  public void checkLoginCredentials_correctPassword_issuesNewToken() {
+    testUser.setPasswordHash("hash");
+    testUser.setToken("oldToken");
+    Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+    Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+    Mockito.when(passwordHasher.matches("testPassword", "hash")).thenReturn(true);
+
+    UserPostDTO credentials = new UserPostDTO();
+    credentials.setUsername("testUsername");
+    credentials.setPassword("testPassword");
+
+    User user = userService.checkLoginCredentials(credentials);
+
+    assertNotEquals("oldToken", user.getToken());
+    assertTrue(user.getTokenExpiresAt().after(new Date()));
+  }
+
+  @Test
+  public void checkLoginCredentials_correctPassword_verifiedBetweenTransactions() {
+    testUser.setPasswordHash("hash");
+    Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+    Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+    Mockito.when(passwordHasher.matches("testPassword", "hash")).thenReturn(true);
+
+    UserPostDTO credentials = new UserPostDTO();
+    credentials.setUsername("testUsername");
+    credentials.setPassword("testPassword");
+
+    userService.checkLoginCredentials(credentials);
+
+    InOrder inOrder = Mockito.inOrder(transactionManager, userRepository, passwordHasher);
+    inOrder.verify(userRepository).findByUsername("testUsername");
+    inOrder.verify(transactionManager).commit(Mockito.any());
+    inOrder.verify(passwordHasher).matches("testPassword", "hash");
+    inOrder.verify(transactionManager).getTransaction(Mockito.any());
+    inOrder.verify(userRepository).findById(1L);
+  }
+
+  @Test
+  public void checkLoginCredentials_usernameNotInDirectory_noQuery() {
+    Mockito.when(userDirectory.isAbsent("unknown")).thenReturn(true);
+
+    UserPostDTO credentials = new UserPostDTO();
+    credentials.setUsername("unknown");
+    credentials.setPassword("testPassword");
+
+    assertThrows(UserNotFoundException.class, () -> userService.checkLoginCredentials(credentials));
+    Mockito.verify(userRepository, Mockito.never()).findByUsername(Mockito.any());
+    Mockito.verify(userArchive, Mockito.never()).findByUsername(Mockito.any());
+  }
+
+  @Test
+  public void updateStatus_offline_expiresToken() {
+    tokenService.issue(testUser);
+
+    userService.updateStatus(testUser, UserStatus.OFFLINE);
+
+    assertFalse(testUser.getTokenExpiresAt().after(new Date()));
   }
 
   @Test
@@ -65,7 +278,7 @@ public class UserServiceTest {
 
     // then -> attempt to create second user with same user -> check that an error
     // is thrown
-    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser));
+    assertThrows(UserAlreadyExistsException.class, () -> userService.createUser(newTestUser()));
   }
 
   @Test
@@ -79,7 +292,71 @@ public class UserServiceTest {
 
     // then -> attempt to create second user with same user -> check that an error
     // is thrown
-    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser));
+    assertThrows(UserAlreadyExistsException.class, () -> userService.createUser(newTestUser()));
+  }
+
+  @Test
+  public void getUsersByIds_manyIds_chunkedAndOrdered() {
+    List<Long> ids = new ArrayList<>();
+    for (long id = 1200; id > 0; id--) {
+      ids.add(id);
+    }
+    // only even ids exist
+    Mockito.when(userRepository.findAllById(Mockito.anyIterable())).thenAnswer(invocation -> {
+      List<User> found = new ArrayList<>();
+      for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+        if (id % 2 == 0) {
+          User user = new User();
+          user.setId(id);
+          found.add(user);
+        }
+      }
+      return found;
+    });
+
+    Map<Long, User> usersById = userService.getUsersByIds(ids);
+
+    // 1200 ids -> 3 queries of at most 500 ids
+    Mockito.verify(userRepository, Mockito.times(3)).findAllById(Mockito.anyIterable());
+    assertEquals(600, usersById.size());
+    assertEquals(Arrays.asList(1200L, 1198L, 1196L),
+        usersById.keySet().stream().limit(3).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void getChangesSince_clustered_notImplemented() {
+    Mockito.when(changeSequence.isClustered()).thenReturn(true);
+
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.getChangesSince(0, 10));
+    assertEquals(HttpStatus.NOT_IMPLEMENTED, exception.getStatus());
+    Mockito.verify(changeSequence, Mockito.never()).getVisibleBound();
+    Mockito.verify(userRepository, Mockito.never())
+        .findByChangeSeqGreaterThanAndChangeSeqLessThanOrderByChangeSeqAsc(
+            Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
   }
 
+  @Test
+  public void getUserByIdFields_onlyArchived_fieldsOfArchivedUser() {
+    Mockito.when(userArchive.findById(1L)).thenReturn(testUser);
+
+    Map<String, Object> user = userService.getUserById(1L, Arrays.asList(UserField.USERNAME));
+
+    assertEquals(Collections.singletonMap("username", "testUsername"), user);
+  }
+
+  @Test
+  public void getUserByIdFields_unknownId_throwsNotFound() {
+    assertThrows(UserNotFoundException.class, () -> userService.getUserById(2L, Arrays.asList(UserField.USERNAME)));
+  }
+
+  @Test
+  public void getUsersByIds_tooManyIds_throwsException() {
+    List<Long> ids = new ArrayList<>();
+    for (long id = 0; id <= UserService.MAX_LOOKUP_IDS; id++) {
+      ids.add(id);
+    }
+
+    assertThrows(ResponseStatusException.class, () -> userService.getUsersByIds(ids));
+  }
 }
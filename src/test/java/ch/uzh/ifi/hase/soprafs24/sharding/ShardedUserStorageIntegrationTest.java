@@ -0,0 +1,176 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserAlreadyExistsException;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the user service on three in-memory H2 databases.
+ *
+ * @see ShardingConfig
+ */
+@WebAppConfiguration
+@SpringBootTest(properties = {
+        "sharding.enabled=true",
+        "sharding.urls=jdbc:h2:mem:usershard0;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:usershard1;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:usershard2;DB_CLOSE_DELAY=-1"
+})
+public class ShardedUserStorageIntegrationTest {
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardDataSources shardDataSources;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void setup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void createUser_usersOnEveryShard_storedOnTheirShardWithUniqueIds() {
+        List<User> users = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            for (int i = 0; i < 2; i++) {
+                users.add(userService.createUser(newUser(usernameOnShard(shard, i))));
+            }
+        }
+
+        Set<Long> ids = new HashSet<>();
+        for (User user : users) {
+            assertTrue(ids.add(user.getId()));
+            assertEquals(shardRouter.shardForUsername(user.getUsername()), shardRouter.shardForId(user.getId()));
+        }
+        for (int shard = 0; shard < 3; shard++) {
+            Integer count = new JdbcTemplate(shardDataSources.get(shard))
+                    .queryForObject("SELECT COUNT(*) FROM user", Integer.class);
+            assertEquals(2, count);
+        }
+        assertEquals(6, userRepository.count());
+    }
+
+    @Test
+    public void getUsers_usersOnSeveralShards_returnsAllUsers() {
+        User first = userService.createUser(newUser(usernameOnShard(0, 0)));
+        User second = userService.createUser(newUser(usernameOnShard(1, 0)));
+        User third = userService.createUser(newUser(usernameOnShard(2, 0)));
+
+        List<User> users = userService.getUsers();
+
+        assertEquals(3, users.size());
+        assertEquals(new HashSet<>(Arrays.asList(first.getId(), second.getId(), third.getId())),
+                new HashSet<>(Arrays.asList(users.get(0).getId(), users.get(1).getId(), users.get(2).getId())));
+
+        Map<Long, User> lookup = userService.getUsersByIds(Arrays.asList(third.getId(), first.getId(), 999L));
+        assertEquals(third.getUsername(), lookup.get(third.getId()).getUsername());
+        assertEquals(first.getUsername(), lookup.get(first.getId()).getUsername());
+        assertNull(lookup.get(999L));
+    }
+
+    @Test
+    public void getUserById_userOnOtherShard_found() {
+        User created = userService.createUser(newUser(usernameOnShard(2, 0)));
+
+        assertEquals(created.getUsername(), userService.getUserById(created.getId()).getUsername());
+    }
+
+    @Test
+    public void checkLoginCredentials_userOnOtherShard_success() {
+        userService.createUser(newUser(usernameOnShard(1, 0)));
+
+        UserPostDTO credentials = new UserPostDTO();
+        credentials.setUsername(usernameOnShard(1, 0));
+        credentials.setPassword("testPassword");
+
+        assertEquals(usernameOnShard(1, 0), userService.checkLoginCredentials(credentials).getUsername());
+    }
+
+    @Test
+    public void createUser_duplicateNameOnOtherShard_throwsException() {
+        User first = newUser(usernameOnShard(0, 0));
+        first.setName("sameName");
+        userService.createUser(first);
+
+        User second = newUser(usernameOnShard(1, 0));
+        second.setName("sameName");
+
+        UserAlreadyExistsException exception = assertThrows(UserAlreadyExistsException.class,
+                () -> userService.createUser(second));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        assertEquals(1, userRepository.count());
+    }
+
+    @Test
+    public void createUser_duplicateUsername_throwsException() {
+        userService.createUser(newUser(usernameOnShard(2, 0)));
+
+        User duplicate = newUser(usernameOnShard(2, 0));
+        duplicate.setName("otherName");
+
+        assertThrows(UserAlreadyExistsException.class, () -> userService.createUser(duplicate));
+    }
+
+    @Test
+    public void createUser_usersOnTwoShardsInOneTransaction_rejectedAndRolledBack() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        assertThrows(IllegalTransactionStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            userService.createUser(newUser(usernameOnShard(0, 0)));
+            userService.createUser(newUser(usernameOnShard(1, 0)));
+        }));
+        assertEquals(0, userRepository.count());
+    }
+
+    private String usernameOnShard(int shard, int index) {
+        // the index-th username of the form "user<n>" that lands on the given shard
+        int found = 0;
+        for (int n = 0; ; n++) {
+            String username = "user" + n;
+            if (shardRouter.shardForUsername(username) == shard && found++ == index) {
+                return username;
+            }
+        }
+    }
+
+    private static User newUser(String username) {
+        User user = new User();
+        user.setName(username + "Name");
+        user.setUsername(username);
+        user.setPassword("testPassword");
+        return user;
+    }
+}
@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs24.sharding;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardingRepositoryInterceptorTest {
+
+    // a query method added to the repository without a routing for it
+    interface StatusUserRepository extends UserRepository {
+        List<User> findByStatus(UserStatus status);
+    }
+
+    @Test
+    public void constructor_userRepository_everyMethodRouted() {
+        assertDoesNotThrow(() -> new ShardingRepositoryInterceptor(UserRepository.class, new ShardRouter(3),
+                null, null));
+    }
+
+    @Test
+    public void constructor_unroutedMethod_throwsException() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> new ShardingRepositoryInterceptor(StatusUserRepository.class, new ShardRouter(3), null, null));
+        assertTrue(exception.getMessage().contains("findByStatus"));
+    }
+}
@@ -0,0 +1,74 @@
+package ch.uzh.ifi.hase.soprafs24.snapshot;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Writes a snapshot of one million synthetic users and measures how long it
+ * takes to restore and to export it again. Run with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+@WebAppConfiguration
+@SpringBootTest
+public class UserSnapshotRestoreBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSnapshotService userSnapshotService;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restore_millionUsers() throws Exception {
+        userRepository.deleteAll();
+        Path snapshot = directory.resolve("users.snapshot");
+
+        long start = System.nanoTime();
+        try (UserSnapshotWriter writer = new UserSnapshotWriter(snapshot)) {
+            long now = System.currentTimeMillis();
+            for (long id = 1; id <= USERS; id++) {
+                User user = new User();
+                user.setId(id);
+                user.setName("Name " + id);
+                user.setUsername("user" + id);
+                user.setToken("token-" + id);
+                user.setStatus(UserStatus.OFFLINE);
+                user.setPasswordHash("$2a$10$abcdefghijklmnopqrstuv" + id);
+                user.setCreationDate(new Date(now - id));
+                writer.write(user);
+            }
+        }
+        System.out.printf("wrote %d users (%d bytes) in %d ms%n", USERS, Files.size(snapshot),
+                (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        assertEquals(USERS, userSnapshotService.restore(snapshot));
+        System.out.printf("restored %d users in %d ms%n", USERS, (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        assertEquals(USERS, userSnapshotService.export(directory.resolve("export.snapshot")));
+        System.out.printf("exported %d users in %d ms%n", USERS, (System.nanoTime() - start) / 1_000_000);
+
+        userRepository.deleteAllInBatch();
+    }
+}
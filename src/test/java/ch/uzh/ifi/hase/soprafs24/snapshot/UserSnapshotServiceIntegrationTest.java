@@ -0,0 +1,85 @@
+package ch.uzh.ifi.hase.soprafs24.snapshot;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WebAppConfiguration
+@SpringBootTest
+public class UserSnapshotServiceIntegrationTest {
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserSnapshotService userSnapshotService;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void exportAndRestore_allUsersRestored() throws Exception {
+        User first = new User();
+        first.setName("First");
+        first.setUsername("first");
+        first.setPassword("firstPassword");
+        first.setBirthDate(new Date(0));
+        first = userService.createUser(first);
+
+        User second = new User();
+        second.setName("Second");
+        second.setUsername("second");
+        second.setPassword("secondPassword");
+        second = userService.createUser(second);
+        userService.updateStatus(second, UserStatus.OFFLINE);
+
+        Path snapshot = directory.resolve("users.snapshot");
+        assertEquals(2, userSnapshotService.export(snapshot));
+
+        userRepository.deleteAll();
+        assertEquals(2, userSnapshotService.restore(snapshot));
+
+        User restoredFirst = userRepository.findByUsername("first");
+        assertEquals(first.getId(), restoredFirst.getId());
+        assertEquals(first.getName(), restoredFirst.getName());
+        assertEquals(first.getToken(), restoredFirst.getToken());
+        assertEquals(first.getPasswordHash(), restoredFirst.getPasswordHash());
+        assertEquals(UserStatus.ONLINE, restoredFirst.getStatus());
+        assertNotNull(restoredFirst.getBirthDate());
+
+        User restoredSecond = userRepository.findByUsername("second");
+        assertEquals(second.getId(), restoredSecond.getId());
+        assertEquals(UserStatus.OFFLINE, restoredSecond.getStatus());
+        assertNull(restoredSecond.getBirthDate());
+
+        // new users must not collide with the restored ids
+        User third = new User();
+        third.setName("Third");
+        third.setUsername("third");
+        third.setPassword("thirdPassword");
+        third = userService.createUser(third);
+        assertTrue(third.getId() > Math.max(first.getId(), second.getId()));
+    }
+}
@@ -0,0 +1,128 @@
+package ch.uzh.ifi.hase.soprafs24.stats;
+
+import ch.uzh.ifi.hase.soprafs24.archive.UserArchive;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserStatisticsTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    private UserRepository userRepository;
+    private UserArchive userArchive;
+    private UserStatistics userStatistics;
+
+    @BeforeEach
+    public void setup() {
+        userRepository = Mockito.mock(UserRepository.class);
+        userArchive = Mockito.mock(UserArchive.class);
+        userStatistics = new UserStatistics(userRepository, userArchive);
+    }
+
+    private User user(long id, UserStatus status, LocalDate registeredOn) {
+        User user = new User();
+        user.setId(id);
+        user.setStatus(status);
+        user.setCreationDate(Date.from(registeredOn.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+        return user;
+    }
+
+    @Test
+    public void onUserChanged_createdAndStatusChanged_countersUpdated() {
+        User first = user(1L, UserStatus.ONLINE, DAY);
+        User second = user(2L, UserStatus.ONLINE, DAY.plusDays(2));
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, first));
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, second));
+
+        second.setStatus(UserStatus.OFFLINE);
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.STATUS_CHANGED, second, UserStatus.ONLINE));
+        // no actual change, e.g. a login of a user that is already online
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.STATUS_CHANGED, first, UserStatus.ONLINE));
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.PROFILE_UPDATED, first));
+
+        assertEquals(2, userStatistics.getTotal());
+        assertEquals(1, userStatistics.getCountsByStatus().get(UserStatus.ONLINE));
+        assertEquals(1, userStatistics.getCountsByStatus().get(UserStatus.OFFLINE));
+        assertEquals(Arrays.asList(DAY, DAY.plusDays(2)), new ArrayList<>(userStatistics.getRegistrationsPerDay().keySet()));
+        assertEquals(1, userStatistics.getRegistrationsPerDay().get(DAY));
+        Mockito.verifyNoInteractions(userRepository, userArchive);
+    }
+
+    @Test
+    public void reconcile_countersDrifted_replacedByDatabaseCounts() {
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, user(1L, UserStatus.ONLINE, DAY)));
+        Mockito.when(userRepository.countByStatus()).thenReturn(Arrays.asList(
+                new Object[]{UserStatus.ONLINE, 3L},
+                new Object[]{UserStatus.OFFLINE, 4L}));
+        Mockito.when(userRepository.countRegistrationsPerDay()).thenReturn(Arrays.asList(
+                new Object[]{java.sql.Date.valueOf(DAY), 5L},
+                new Object[]{java.sql.Date.valueOf(DAY.plusDays(1)), 2L}));
+        Mockito.when(userArchive.countByStatus()).thenReturn(Collections.singletonList(
+                new Object[]{UserStatus.OFFLINE, 10L}));
+        Mockito.when(userArchive.countRegistrationsPerDay()).thenReturn(Collections.singletonList(
+                new Object[]{java.sql.Date.valueOf(DAY), 10L}));
+
+        userStatistics.reconcile();
+
+        // archived users included
+        assertEquals(17, userStatistics.getTotal());
+        assertEquals(3, userStatistics.getCountsByStatus().get(UserStatus.ONLINE));
+        assertEquals(14, userStatistics.getCountsByStatus().get(UserStatus.OFFLINE));
+        assertEquals(15, userStatistics.getRegistrationsPerDay().get(DAY));
+        assertEquals(2, userStatistics.getRegistrationsPerDay().get(DAY.plusDays(1)));
+        assertTrue(userStatistics.getReconciledAt() > 0);
+
+        // later events count on top of the reconciled numbers
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, user(8L, UserStatus.ONLINE, DAY)));
+        assertEquals(18, userStatistics.getTotal());
+        assertEquals(16, userStatistics.getRegistrationsPerDay().get(DAY));
+    }
+
+    @Test
+    public void reconcile_eventAfterRecountSawChange_countedTwiceUntilNextReconcile() {
+        // the registration has committed before the recount, its event arrives after the counters were replaced
+        User registered = user(1L, UserStatus.ONLINE, DAY);
+        Mockito.when(userRepository.countByStatus()).thenReturn(Collections.singletonList(
+                new Object[]{UserStatus.ONLINE, 1L}));
+        userStatistics.reconcile();
+        userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, registered));
+
+        assertEquals(2, userStatistics.getTotal());
+
+        userStatistics.reconcile();
+        assertEquals(1, userStatistics.getTotal());
+        assertEquals(1, userStatistics.getCountsByStatus().get(UserStatus.ONLINE));
+    }
+
+    @Test
+    public void reconcile_eventDuringRecount_missedUntilNextReconcile() {
+        // the event goes to the counters that are about to be replaced, the recount has not seen the change
+        User registered = user(1L, UserStatus.ONLINE, DAY);
+        Mockito.when(userRepository.countByStatus())
+                .thenAnswer(invocation -> {
+                    userStatistics.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, registered));
+                    return Collections.emptyList();
+                })
+                .thenReturn(Collections.singletonList(new Object[]{UserStatus.ONLINE, 1L}));
+        userStatistics.reconcile();
+
+        assertEquals(0, userStatistics.getTotal());
+
+        userStatistics.reconcile();
+        assertEquals(1, userStatistics.getTotal());
+    }
+}
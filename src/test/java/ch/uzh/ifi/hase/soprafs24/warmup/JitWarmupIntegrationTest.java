@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs24.warmup;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see JitWarmup
+ */
+@WebAppConfiguration
+@SpringBootTest(properties = {"warmup.users=2", "warmup.iterations=20", "warmup.logins=2"})
+public class JitWarmupIntegrationTest {
+
+    @Autowired
+    private JitWarmup jitWarmup;
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ApplicationAvailability applicationAvailability;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void run_afterStartup_doneWithoutFailureBeforeReadyAndRolledBack() throws Exception {
+        assertTrue(jitWarmup.awaitCompletion(0, TimeUnit.MILLISECONDS));
+        assertEquals(ReadinessState.ACCEPTING_TRAFFIC, applicationAvailability.getReadinessState());
+
+        // every synthetic user ran through all hot paths
+        assertEquals(0, jitWarmup.getFailures());
+        assertEquals(0, meterRegistry.get("warmup.failures").gauge().value());
+        assertTrue(jitWarmup.getDurationMillis() > 0);
+        assertTrue(meterRegistry.get("warmup.duration").timeGauge().value(TimeUnit.MILLISECONDS) > 0);
+
+        // the synthetic users were rolled back
+        for (User user : userRepository.findAll()) {
+            assertFalse(user.getUsername().startsWith("warmup-"));
+        }
+    }
+}